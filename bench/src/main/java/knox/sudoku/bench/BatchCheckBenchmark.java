@@ -0,0 +1,63 @@
+package knox.sudoku.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import knox.sudoku.VectorBatchChecker;
+
+/* Average time per board for VectorBatchChecker to check a batch, with the Vector API and with its
+ * scalar path. The batch cycles through the fixture boards, plus one with a conflict in it.
+ * Compare the two on AVX2 by adding -jvmArgsAppend -XX:UseAVX=2 on an AVX-512 machine. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class BatchCheckBenchmark {
+  private static final int BATCH = 4096;
+
+  @Param({ "vector", "scalar" })
+  public String path;
+
+  private VectorBatchChecker checker;
+  private boolean vector;
+
+  @Setup
+  public void setup() {
+    int[][] boards = {
+        Boards.cells(Boards.EMPTY),
+        Boards.cells(Boards.EASY),
+        Boards.cells(Boards.HARD),
+        Boards.cells(Boards.NEARLY_SOLVED),
+        Boards.cells(Boards.HARD),
+    };
+    boards[4][1] = 8; // Two 8s in the first row
+    checker = new VectorBatchChecker(BATCH);
+    for(int b = 0; b < BATCH; ++b)
+      checker.set(b, boards[b % boards.length]);
+    vector = path.equals("vector");
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public VectorBatchChecker check() {
+    if(vector)
+      checker.check();
+    else
+      checker.checkScalar();
+    return checker;
+  }
+}
@@ -0,0 +1,75 @@
+package knox.sudoku.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import knox.sudoku.Sudoku;
+
+/* The boards every benchmark runs against, by name. Use the names as JMH @Param values. */
+public class Boards {
+  private Boards() {}
+
+  public static final String EMPTY = "empty";
+  public static final String EASY = "easy";
+  public static final String HARD = "hard";
+  public static final String NEARLY_SOLVED = "nearlySolved";
+
+  // A 17-clue puzzle that takes the solvers a long time compared to most
+  private static final String HARD_PUZZLE =
+      "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..";
+
+  // The solution to easy1.txt with a few values taken out
+  private static final String NEARLY_SOLVED_PUZZLE =
+      "534678912672195348198342567859761423426853791713924856961537284287419635345286.7.";
+
+  /* The given board as 81 values in row-major order, 0 for blanks */
+  public static int[] cells(String name) {
+    switch(name) {
+    case EMPTY:
+      return new int[81];
+    case EASY:
+      return readEasy();
+    case HARD:
+      return parse(HARD_PUZZLE);
+    case NEARLY_SOLVED:
+      return parse(NEARLY_SOLVED_PUZZLE);
+    default:
+      throw new IllegalArgumentException("No board called \"" + name + "\"");
+    }
+  }
+
+  /* A Sudoku model loaded with the given board */
+  public static Sudoku sudoku(String name) {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load(cells(name));
+    return sudoku;
+  }
+
+  private static int[] parse(String puzzle) {
+    int[] cells = new int[81];
+    for(int i = 0; i < 81; ++i) {
+      char ch = puzzle.charAt(i);
+      cells[i] = ch == '.' ? 0 : ch - '0';
+    }
+    return cells;
+  }
+
+  /* easy1.txt gets copied onto the classpath by the build */
+  private static int[] readEasy() {
+    try(InputStream in = Boards.class.getResourceAsStream("/easy1.txt")) {
+      if(in == null) {
+        throw new IllegalStateException("easy1.txt is not on the classpath");
+      }
+      int[] cells = new int[81];
+      int count = 0;
+      int b;
+      while(count < 81 && (b = in.read()) != -1) {
+        if(b >= '0' && b <= '9')
+          cells[count++] = b - '0';
+      }
+      return cells;
+    } catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package knox.sudoku.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import knox.sudoku.Sudoku;
+
+/* Throughput of the Sudoku model's queries. Run with "-prof gc" to see how much each one allocates.
+ *
+ * The per-cell queries walk all 81 cells (and all 9 values where it applies) in one invocation, so
+ * they aren't just measuring whichever cell happens to be first. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+  @Param({ Boards.EMPTY, Boards.EASY, Boards.HARD, Boards.NEARLY_SOLVED })
+  public String board;
+
+  private Sudoku sudoku;
+
+  @Setup
+  public void setup() {
+    sudoku = Boards.sudoku(board);
+  }
+
+  @Benchmark
+  public void isLegal(Blackhole bh) {
+    for(int r = 0; r < 9; ++r)
+      for(int c = 0; c < 9; ++c)
+        for(int v = 1; v <= 9; ++v)
+          bh.consume(sudoku.isLegal(r, c, v));
+  }
+
+  @Benchmark
+  public void getLegalValues(Blackhole bh) {
+    for(int r = 0; r < 9; ++r)
+      for(int c = 0; c < 9; ++c)
+        bh.consume(sudoku.getLegalValues(r, c));
+  }
+
+  @Benchmark
+  public void getLegalViolations(Blackhole bh) {
+    for(int r = 0; r < 9; ++r)
+      for(int c = 0; c < 9; ++c)
+        for(int v = 1; v <= 9; ++v)
+          bh.consume(sudoku.getLegalViolations(r, c, v));
+  }
+
+  @Benchmark
+  public Object getMostContrainedSquares() {
+    return sudoku.getMostContrainedSquares();
+  }
+
+  @Benchmark
+  public void getAllLegalPositions(Blackhole bh) {
+    for(int v = 1; v <= 9; ++v)
+      bh.consume(sudoku.getAllLegalPositions(v));
+  }
+
+  @Benchmark
+  public boolean gameOver() {
+    return sudoku.gameOver();
+  }
+}
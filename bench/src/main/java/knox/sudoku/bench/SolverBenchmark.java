@@ -0,0 +1,51 @@
+package knox.sudoku.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import knox.sudoku.SudokuSolver;
+
+/* Average time for each solver to solve each board from scratch. The solver is reused between
+ * invocations like the batch tools do, so "-prof gc" should show no allocation at all. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+
+  @Param({ Solvers.DLX, Solvers.BITBOARD })
+  public String solver;
+
+  @Param({ Boards.EMPTY, Boards.EASY, Boards.HARD, Boards.NEARLY_SOLVED })
+  public String board;
+
+  private SudokuSolver engine;
+  private int[] puzzle;
+  private int[] scratch = new int[81];
+
+  @Setup
+  public void setup() {
+    engine = Solvers.create(solver);
+    puzzle = Boards.cells(board);
+  }
+
+  @Benchmark
+  public int[] solve() {
+    System.arraycopy(puzzle, 0, scratch, 0, 81);
+    engine.solve(scratch);
+    return scratch;
+  }
+}
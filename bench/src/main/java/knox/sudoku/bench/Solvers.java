@@ -0,0 +1,25 @@
+package knox.sudoku.bench;
+
+import knox.sudoku.BitboardSolver;
+import knox.sudoku.DancingLinksSolver;
+import knox.sudoku.SudokuSolver;
+
+/* Every solver the benchmarks know about, by name. Add new solvers here (and to the @Param lists
+ * in SolverBenchmark) so they get measured against the same boards as the rest. */
+public class Solvers {
+  private Solvers() {}
+
+  public static final String DLX = "dlx";
+  public static final String BITBOARD = "bitboard";
+
+  public static SudokuSolver create(String name) {
+    switch(name) {
+    case DLX:
+      return new DancingLinksSolver();
+    case BITBOARD:
+      return new BitboardSolver();
+    default:
+      throw new IllegalArgumentException("No solver called \"" + name + "\"");
+    }
+  }
+}
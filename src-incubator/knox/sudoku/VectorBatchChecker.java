@@ -0,0 +1,203 @@
+package knox.sudoku;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/* Checks a whole batch of boards against the rules at once, with the Vector API, for validating and
+ * propagating big batches of puzzles.
+ *
+ * The boards are stored struct-of-arrays: cell-major, board-minor, so cells[cell * capacity + b]
+ * is that cell of board b, and one vector holds the same cell of 8 boards (AVX2) or 16 (AVX-512).
+ * Everything then works on a vector of boards the way Sudoku does on one: a value's bit is
+ * (1 << val) >>> 1, the same bit as maskOf gives it, except that a blank (0) gets no bit at all
+ * where maskOf(0) would be the top bit. A unit's occupancy mask is the OR of its cells' bits, a
+ * value that was already in the mask is a conflict (what getLegalViolations finds), and a blank
+ * cell's candidates are the values missing from its row, column and box (what isLegal allows).
+ * The masks come out in the same layout as the cells.
+ *
+ * checkScalar() does the same thing one board at a time, to compare against. This lives apart from
+ * src because jdk.incubator.vector has to be added by hand when compiling and running:
+ *   javac --add-modules jdk.incubator.vector ...
+ *   java --add-modules jdk.incubator.vector ...
+ * Masks are ints, so boards go up to 25x25 (5x5 boxes). It is NOT thread safe. */
+public class VectorBatchChecker {
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  private static final int MAX_BOX_SIZE = 5;
+
+  private final int n; // Width of the board
+  private final int cellCount;
+  private final int all; // Mask of every value
+  private final int capacity; // Boards, rounded up to a whole number of vectors
+  private final int[][] units; // Cells of every row, then every column, then every box
+  private final int[] rowOf;
+  private final int[] colOf;
+  private final int[] boxOf;
+
+  private final int[] cells;
+  private final int[] rowMasks; // rowMasks[row * capacity + b], and the same for columns and boxes
+  private final int[] colMasks;
+  private final int[] boxMasks;
+  private final int[] candidates; // Legal values of every blank cell, 0 for filled ones
+  private final boolean[] conflicts;
+
+  /* A checker for up to capacity 9x9 boards */
+  public VectorBatchChecker(int capacity) {
+    this(3, capacity);
+  }
+
+  public VectorBatchChecker(int boxSize, int capacity) {
+    if(boxSize < 1 || boxSize > MAX_BOX_SIZE) {
+      throw new IllegalArgumentException("Boxes have to be between 1x1 and " + MAX_BOX_SIZE + "x" + MAX_BOX_SIZE);
+    }
+    if(capacity < 1) {
+      throw new IllegalArgumentException("The batch has to hold at least one board");
+    }
+    n = boxSize * boxSize;
+    cellCount = n * n;
+    all = (int) Sudoku.allValuesMask(n);
+    this.capacity = SPECIES.loopBound(capacity + SPECIES.length() - 1);
+
+    rowOf = new int[cellCount];
+    colOf = new int[cellCount];
+    boxOf = new int[cellCount];
+    for(int i = 0; i < cellCount; ++i) {
+      rowOf[i] = i / n;
+      colOf[i] = i % n;
+      boxOf[i] = i / n / boxSize * boxSize + i % n / boxSize;
+    }
+    units = new int[n * 3][n];
+    for(int i = 0; i < n; ++i) {
+      for(int j = 0; j < n; ++j) {
+        units[i][j] = i * n + j;
+        units[n + i][j] = j * n + i;
+        units[n * 2 + i][j] = (i / boxSize * boxSize + j / boxSize) * n + i % boxSize * boxSize + j % boxSize;
+      }
+    }
+
+    cells = new int[cellCount * this.capacity];
+    rowMasks = new int[n * this.capacity];
+    colMasks = new int[n * this.capacity];
+    boxMasks = new int[n * this.capacity];
+    candidates = new int[cellCount * this.capacity];
+    conflicts = new boolean[this.capacity];
+  }
+
+  /* Number of boards it holds. This is the capacity asked for rounded up to a whole number of
+   * vectors; boards that are never set stay blank. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /* Boards checked per vector instruction on this machine */
+  public static int getLanes() {
+    return SPECIES.length();
+  }
+
+  /* Copies a row-major board (0 for blanks) into slot b */
+  public void set(int b, int[] board) {
+    if(board.length != cellCount) {
+      throw new IllegalArgumentException("Expected " + cellCount + " cells but got " + board.length);
+    }
+    for(int i = 0; i < cellCount; ++i) {
+      int val = board[i];
+      if(val < 0 || val > n) {
+        throw new IllegalArgumentException("\"" + val + "\"" + " is an invalid value on a sudoku board");
+      }
+      cells[i * capacity + b] = val;
+    }
+  }
+
+  /* Blanks every board */
+  public void clear() {
+    Arrays.fill(cells, 0);
+  }
+
+  /* Works out the masks, candidates and conflicts of every board, a vector of boards at a time */
+  public void check() {
+    IntVector one = IntVector.broadcast(SPECIES, 1);
+    IntVector allValues = IntVector.broadcast(SPECIES, all);
+    for(int b = 0; b < capacity; b += SPECIES.length()) {
+      IntVector conflict = IntVector.zero(SPECIES);
+      for(int u = 0; u < units.length; ++u) {
+        IntVector occupied = IntVector.zero(SPECIES);
+        for(int cell : units[u]) {
+          IntVector val = IntVector.fromArray(SPECIES, cells, cell * capacity + b);
+          IntVector bit = one.lanewise(VectorOperators.LSHL, val).lanewise(VectorOperators.LSHR, 1);
+          conflict = conflict.or(occupied.and(bit));
+          occupied = occupied.or(bit);
+        }
+        occupied.intoArray(masksOf(u), u % n * capacity + b);
+      }
+      conflict.compare(VectorOperators.NE, 0).intoArray(conflicts, b);
+
+      for(int i = 0; i < cellCount; ++i) {
+        IntVector used = IntVector.fromArray(SPECIES, rowMasks, rowOf[i] * capacity + b)
+            .or(IntVector.fromArray(SPECIES, colMasks, colOf[i] * capacity + b))
+            .or(IntVector.fromArray(SPECIES, boxMasks, boxOf[i] * capacity + b));
+        VectorMask<Integer> blank = IntVector.fromArray(SPECIES, cells, i * capacity + b).compare(VectorOperators.EQ, 0);
+        IntVector.zero(SPECIES).blend(allValues.and(used.not()), blank).intoArray(candidates, i * capacity + b);
+      }
+    }
+  }
+
+  /* Same as check(), one board at a time. Boards are still taken a vector's worth at a time, so it
+   * touches memory the same way check() does and only the arithmetic is different. */
+  public void checkScalar() {
+    for(int block = 0; block < capacity; block += SPECIES.length()) {
+      for(int b = block; b < block + SPECIES.length(); ++b)
+        checkScalar(b);
+    }
+  }
+
+  private void checkScalar(int b) {
+    int conflict = 0;
+    for(int u = 0; u < units.length; ++u) {
+      int occupied = 0;
+      for(int cell : units[u]) {
+        int bit = (1 << cells[cell * capacity + b]) >>> 1;
+        conflict |= occupied & bit;
+        occupied |= bit;
+      }
+      masksOf(u)[u % n * capacity + b] = occupied;
+    }
+    conflicts[b] = conflict != 0;
+
+    for(int i = 0; i < cellCount; ++i) {
+      int used = rowMasks[rowOf[i] * capacity + b] | colMasks[colOf[i] * capacity + b] | boxMasks[boxOf[i] * capacity + b];
+      candidates[i * capacity + b] = cells[i * capacity + b] == 0 ? all & ~used : 0;
+    }
+  }
+
+  private int[] masksOf(int unit) {
+    return unit < n ? rowMasks : unit < n * 2 ? colMasks : boxMasks;
+  }
+
+  // Results of the last check
+
+  /* True if board b has the same value twice in some row, column or box */
+  public boolean hasConflict(int b) {
+    return conflicts[b];
+  }
+
+  /* Values in a row of board b, with bit (val - 1) for each one like Sudoku's masks */
+  public int getRowMask(int b, int row) {
+    return rowMasks[row * capacity + b];
+  }
+
+  public int getColMask(int b, int col) {
+    return colMasks[col * capacity + b];
+  }
+
+  public int getBoxMask(int b, int box) {
+    return boxMasks[box * capacity + b];
+  }
+
+  /* Values that can legally go in a blank square of board b, or 0 if it isn't blank */
+  public int getCandidates(int b, int row, int col) {
+    return candidates[(row * n + col) * capacity + b];
+  }
+}
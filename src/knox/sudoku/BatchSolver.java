@@ -0,0 +1,233 @@
+package knox.sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Solves a whole file of puzzles from the command line, without the GUI.
+ *
+ * The input has one puzzle per line, 81 characters in row-major order with '0' or '.' for blanks,
+ * or anything else CorpusReader understands. Every puzzle gets one line of output in the same order:
+ * the 81-digit solution, or 81 zeroes if the puzzle couldn't be read or has no solution. Blank lines
+ * are skipped. Throughput is reported on stderr when it finishes.
+ *
+ * Puzzles are read in blocks and each block is solved across a work-stealing ForkJoinPool. There
+ * are two blocks, so while the pool solves one, this thread writes out the last one and reads the
+ * next into the other, and the pool never waits on the file. Every worker thread keeps its own
+ * solver for the whole run, and solutions are written straight into their slot of the output
+ * block, so nothing has to be sorted back into order afterwards.
+ *
+ * With -trace (bitboard only), every solve and a sample of one in -trace-every branches is
+ * recorded to a SearchTrace for TraceSummary, along with the boards of puzzles that take at least
+ * -trace-slow microseconds.
+ *
+ * Usage: BatchSolver [-solver dlx|bitboard] [-threads n] [-trace file [-trace-every n] [-trace-slow us]] input [output] */
+public class BatchSolver {
+  private static final int CELLS = 81;
+  private static final int LINE = CELLS + 1; // Output line including the '\n'
+  private static final int BLOCK_SIZE = 1 << 16; // Puzzles read and solved at a time
+  private static final int GRAIN = 64; // Puzzles one task solves without splitting further
+
+  private final ForkJoinPool pool;
+  private final ThreadLocal<Worker> workers;
+  private final Block[] blocks = { new Block(), new Block() };
+  private final LongAdder solved = new LongAdder();
+  private long total;
+
+  public BatchSolver(String solverName, int threads) {
+    this(solverName, threads, null);
+  }
+
+  /* Same as above, but every solve is recorded into trace, which only the bitboard solver can do */
+  public BatchSolver(String solverName, int threads, SearchTrace trace) {
+    if(!solverName.equals("dlx") && !solverName.equals("bitboard")) {
+      throw new IllegalArgumentException("Unknown solver \"" + solverName + "\", expected dlx or bitboard");
+    }
+    if(trace != null && !solverName.equals("bitboard")) {
+      throw new IllegalArgumentException("Only the bitboard solver can be traced");
+    }
+    pool = new ForkJoinPool(threads);
+    workers = ThreadLocal.withInitial(() -> {
+      SudokuSolver solver = newSolver(solverName);
+      if(trace != null)
+        ((BitboardSolver) solver).setTrace(trace);
+      return new Worker(solver);
+    });
+  }
+
+  static SudokuSolver newSolver(String name) {
+    return name.equals("dlx") ? new DancingLinksSolver() : new BitboardSolver();
+  }
+
+  /* Puzzles read from the file, and the lines written for them */
+  private static class Block {
+    final int[] cells = new int[BLOCK_SIZE * CELLS];
+    final byte[] output = new byte[BLOCK_SIZE * LINE];
+    int count;
+  }
+
+  /* Solves every puzzle in the input file, writing the solutions to out in the same order */
+  public void solveFile(String filename, OutputStream out) throws IOException {
+    try(CorpusReader reader = new CorpusReader(filename)) {
+      CorpusReader.Cursor in = reader.cursor();
+      Block current = blocks[0];
+      Block other = blocks[1];
+      other.count = 0;
+      readBlock(in, current);
+      while(current.count > 0) {
+        ForkJoinTask<Void> solving = pool.submit(new SolveTask(current, 0, current.count));
+        // While that runs, finish off the last block and start on the next
+        if(other.count > 0) {
+          out.write(other.output, 0, other.count * LINE);
+          total += other.count;
+        }
+        readBlock(in, other);
+        solving.join();
+        Block done = current;
+        current = other;
+        other = done;
+      }
+      if(other.count > 0) {
+        out.write(other.output, 0, other.count * LINE);
+        total += other.count;
+      }
+    }
+    out.flush();
+  }
+
+  /* Number of puzzles read so far */
+  public long getPuzzleCount() {
+    return total;
+  }
+
+  /* Number of puzzles solved so far */
+  public long getSolvedCount() {
+    return solved.sum();
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /* Reads up to BLOCK_SIZE puzzles into the block, setting its count (0 at the end of the file).
+   * Malformed ones get a -1 in their first cell, which every solver rejects. */
+  private static void readBlock(CorpusReader.Cursor in, Block block) {
+    int[] cells = block.cells;
+    int count = 0;
+    int result;
+    while(count < BLOCK_SIZE && (result = in.nextRecord(cells, count * CELLS)) != CorpusReader.END) {
+      if(result == CorpusReader.MALFORMED) {
+        cells[count * CELLS] = -1;
+      }
+      ++count;
+    }
+    block.count = count;
+  }
+
+  /* What every worker thread keeps for the whole run. The solvers take exactly 81 cells, so each
+   * puzzle is copied out of the block into the worker's own board first. */
+  private static class Worker {
+    final SudokuSolver solver;
+    final int[] board = new int[CELLS];
+
+    Worker(SudokuSolver solver) {
+      this.solver = solver;
+    }
+  }
+
+  /* Solves one puzzle of the block and writes its output line. Returns true if it was solved. */
+  private static boolean solveOne(Worker worker, Block block, int index) {
+    int[] board = worker.board;
+    byte[] output = block.output;
+    System.arraycopy(block.cells, index * CELLS, board, 0, CELLS);
+    boolean ok = worker.solver.solve(board);
+    int out = index * LINE;
+    for(int i = 0; i < CELLS; ++i) {
+      output[out + i] = (byte) (ok ? '0' + board[i] : '0');
+    }
+    output[out + CELLS] = '\n';
+    return ok;
+  }
+
+  /* Solves puzzles [from, to) of a block, splitting in half until it is small enough
+   * that idle workers aren't worth waking up. */
+  private class SolveTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final transient Block block;
+    private final int from;
+    private final int to;
+
+    SolveTask(Block block, int from, int to) {
+      this.block = block;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if(to - from > GRAIN) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new SolveTask(block, from, mid), new SolveTask(block, mid, to));
+        return;
+      }
+      Worker worker = workers.get();
+      int count = 0;
+      for(int i = from; i < to; ++i) {
+        if(solveOne(worker, block, i))
+          ++count;
+      }
+      solved.add(count);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    String solverName = "dlx";
+    int threads = Runtime.getRuntime().availableProcessors();
+    String traceFile = null;
+    int traceEvery = 64;
+    long traceSlow = 1000;
+    String input = null;
+    String output = null;
+    for(int i = 0; i < args.length; ++i) {
+      if(args[i].equals("-solver") && i + 1 < args.length) {
+        solverName = args[++i];
+      } else if(args[i].equals("-threads") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if(args[i].equals("-trace") && i + 1 < args.length) {
+        traceFile = args[++i];
+      } else if(args[i].equals("-trace-every") && i + 1 < args.length) {
+        traceEvery = Integer.parseInt(args[++i]);
+      } else if(args[i].equals("-trace-slow") && i + 1 < args.length) {
+        traceSlow = Long.parseLong(args[++i]);
+      } else if(input == null) {
+        input = args[i];
+      } else {
+        output = args[i];
+      }
+    }
+    if(input == null) {
+      System.err.println("Usage: BatchSolver [-solver dlx|bitboard] [-threads n] [-trace file [-trace-every n] [-trace-slow us]] input [output]");
+      System.exit(1);
+    }
+
+    SearchTrace trace = traceFile == null ? null : new SearchTrace(traceFile, traceEvery, traceSlow);
+    BatchSolver batch = new BatchSolver(solverName, threads, trace);
+    long start = System.nanoTime();
+    try(OutputStream out = output == null ? new BufferedOutputStream(System.out, 1 << 20)
+        : new BufferedOutputStream(new FileOutputStream(output), 1 << 20)) {
+      batch.solveFile(input, out);
+    } finally {
+      batch.shutdown();
+      if(trace != null)
+        trace.close();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.printf("%d puzzles (%d solved) in %.3f s on %d threads: %.0f puzzles/s%n",
+        batch.getPuzzleCount(), batch.getSolvedCount(), seconds, threads, batch.getPuzzleCount() / seconds);
+  }
+}
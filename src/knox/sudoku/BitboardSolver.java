@@ -0,0 +1,399 @@
+package knox.sudoku;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* A depth-first Sudoku solver that works directly on candidate masks.
+ *
+ * Like Sudoku.getMostContrainedSquares, it always branches on the empty cell with the fewest legal
+ * values, but it gets those from the row, column and box masks instead of building sets. Cells with
+ * only one legal value (naked singles), and values that only fit in one cell of a row, column or
+ * box (hidden singles), are filled in straight away without branching.
+ *
+ * Every placement is pushed onto a trail, so undoing one is just popping it and clearing three bits.
+ * The masks are longs, so it works for any board Sudoku does, up to 64x64. All of the state lives in
+ * arrays allocated in the constructor, so solving never allocates. It is NOT thread safe, so use one
+ * per thread. */
+public class BitboardSolver implements SudokuSolver {
+  private final int n; // Width of the board
+  private final int cellCount;
+  private final long all; // Mask of every value
+
+  // Row, column and box of every cell
+  private final int[] rowOf;
+  private final int[] colOf;
+  private final int[] boxOf;
+  // Cells of every row, column and box
+  private final int[][] units;
+
+  private final int[] cells;
+  private final long[] rowUsed;
+  private final long[] colUsed;
+  private final long[] boxUsed;
+
+  // Empty cells are kept packed at the front of empties. Filling one swaps it to the end of the
+  // packed part, so undoing fills in reverse order only has to grow emptyCount again.
+  private final int[] empties;
+  private final int[] emptyPos;
+  private int emptyCount;
+
+  private final int[] trail; // Cells filled in, in order
+  private int trailSize;
+
+  private int[] target; // Board to write the first solution into, if any
+  private long solutionCount;
+  private long limit; // Stop searching once this many solutions are found
+  private long nodeCount;
+  private long backtrackCount;
+  private long propagationCount;
+
+  // When set, the search gives up as soon as it sees it become true. It is only looked at every
+  // CANCEL_CHECK_INTERVAL steps, so the search doesn't slow down.
+  private static final int CANCEL_CHECK_INTERVAL = 1024;
+  private AtomicBoolean cancel;
+  private int untilCancelCheck;
+  private boolean cancelled;
+
+  // For tracing (see SearchTrace and SolverEvents). depth is how many branches deep search() is.
+  // A BacktrackBurst event covers every BURST_SIZE backtracks. It is null unless a recording
+  // wants it, so solving still doesn't allocate.
+  public static final int BURST_SIZE = 4096;
+  private SearchTrace.Recorder trace;
+  private int depth;
+  private SolverEvents.BacktrackBurst burst;
+  private int untilBurst;
+  private int shallowest; // Shallowest depth backed out to during this burst
+
+  /* A solver for 9x9 boards */
+  public BitboardSolver() {
+    this(3);
+  }
+
+  /* A solver for boards made of boxSize x boxSize boxes */
+  public BitboardSolver(int boxSize) {
+    if(boxSize < 1 || boxSize > Sudoku.MAX_BOX_SIZE) {
+      throw new IllegalArgumentException("Boxes have to be between 1x1 and " + Sudoku.MAX_BOX_SIZE + "x" + Sudoku.MAX_BOX_SIZE);
+    }
+    n = boxSize * boxSize;
+    cellCount = n * n;
+    all = Sudoku.allValuesMask(n);
+
+    rowOf = new int[cellCount];
+    colOf = new int[cellCount];
+    boxOf = new int[cellCount];
+    for(int i = 0; i < cellCount; ++i) {
+      rowOf[i] = i / n;
+      colOf[i] = i % n;
+      boxOf[i] = i / n / boxSize * boxSize + i % n / boxSize;
+    }
+    units = new int[n * 3][n];
+    for(int i = 0; i < n; ++i) {
+      for(int j = 0; j < n; ++j) {
+        units[i][j] = i * n + j;
+        units[n + i][j] = j * n + i;
+        units[n * 2 + i][j] = (i / boxSize * boxSize + j / boxSize) * n + i % boxSize * boxSize + j % boxSize;
+      }
+    }
+
+    cells = new int[cellCount];
+    rowUsed = new long[n];
+    colUsed = new long[n];
+    boxUsed = new long[n];
+    empties = new int[cellCount];
+    emptyPos = new int[cellCount];
+    trail = new int[cellCount];
+  }
+
+  @Override
+  public boolean solve(int[] board) {
+    return run(board, board, 1) > 0;
+  }
+
+  @Override
+  public int countSolutions(int[] board, int limit) {
+    return (int) run(board, null, limit); // Never more than limit
+  }
+
+  /* Same as above, but it can count past Integer.MAX_VALUE, which a nearly empty board (or one of
+   * ParallelSolver's subtrees) can have */
+  public long countSolutions(int[] board, long limit) {
+    return run(board, null, limit);
+  }
+
+  /* Searches for up to limit solutions of board, writing the first one into target if it isn't null.
+   * Returns the number found. */
+  private long run(int[] board, int[] target, long limit) {
+    solutionCount = 0;
+    cancelled = false;
+    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+    SolverEvents.Solve event = SolverEvents.SOLVE.isEnabled() ? new SolverEvents.Solve() : null;
+    if(event != null)
+      event.begin();
+    if(trace != null)
+      trace.start(SolverEvents.clues(board));
+    if(reset(board) && limit > 0) {
+      this.target = target;
+      this.limit = limit;
+      untilCancelCheck = CANCEL_CHECK_INTERVAL;
+      depth = 0;
+      startBurst();
+      search();
+      this.target = null;
+      burst = null; // Whatever is left of it isn't a whole burst
+    }
+    if(Metrics.ENABLED)
+      Metrics.solved(start, nodeCount, backtrackCount, propagationCount);
+    if(trace != null)
+      trace.end(solutionCount, nodeCount, backtrackCount, cancelled, cells); // board may be the solution by now
+    if(event != null)
+      event.end();
+    if(event != null && event.shouldCommit()) {
+      event.solver = "bitboard";
+      event.size = n;
+      event.clues = SolverEvents.clues(cells);
+      event.solutions = solutionCount;
+      event.nodes = nodeCount;
+      event.backtracks = backtrackCount;
+      event.cancelled = cancelled;
+      event.commit();
+    }
+    return solutionCount;
+  }
+
+  /* Records a sample of every solve and count after this into the trace. null turns it off again. */
+  public void setTrace(SearchTrace trace) {
+    if(trace != null && trace.getBoxSize() * trace.getBoxSize() != n) {
+      throw new IllegalArgumentException("The trace is for " + trace.getBoxSize() + "x" + trace.getBoxSize() + " boxes");
+    }
+    this.trace = trace == null ? null : trace.newRecorder();
+  }
+
+  /* Makes every solve and count after this stop early once the flag is set, so several solvers
+   * racing on parts of the same puzzle can all quit when one of them finds the answer. null turns
+   * it off again. */
+  public void setCancelFlag(AtomicBoolean cancel) {
+    this.cancel = cancel;
+  }
+
+  /* True if the last solve or count stopped early because of the cancel flag, in which case its
+   * result doesn't mean anything */
+  public boolean wasCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public long getNodeCount() {
+    return nodeCount;
+  }
+
+  @Override
+  public long getBacktrackCount() {
+    return backtrackCount;
+  }
+
+  /* Number of the nodes in the last solve that were naked or hidden singles, filled in without
+   * having to branch */
+  public long getPropagationCount() {
+    return propagationCount;
+  }
+
+  /* Loads a board into the solver. Returns false if it already breaks the rules. */
+  private boolean reset(int[] board) {
+    if(board.length != cellCount) {
+      throw new IllegalArgumentException("Expected " + cellCount + " cells but got " + board.length);
+    }
+    nodeCount = 0;
+    backtrackCount = 0;
+    propagationCount = 0;
+    trailSize = 0;
+    emptyCount = 0;
+    Arrays.fill(rowUsed, 0);
+    Arrays.fill(colUsed, 0);
+    Arrays.fill(boxUsed, 0);
+    for(int i = 0; i < cellCount; ++i) {
+      int val = board[i];
+      cells[i] = val;
+      if(val == 0) {
+        emptyPos[i] = emptyCount;
+        empties[emptyCount++] = i;
+        continue;
+      }
+      if(val < 0 || val > n)
+        return false;
+      long bit = Sudoku.maskOf(val);
+      if(((rowUsed[rowOf[i]] | colUsed[colOf[i]] | boxUsed[boxOf[i]]) & bit) != 0)
+        return false; // Two of the same value in a row, column or box
+      rowUsed[rowOf[i]] |= bit;
+      colUsed[colOf[i]] |= bit;
+      boxUsed[boxOf[i]] |= bit;
+    }
+    return true;
+  }
+
+  /* Fills in the rest of the board. Returns true once enough solutions have been found to stop, or
+   * the search was cancelled.
+   * The board is always put back the way it was before returning. */
+  private boolean search() {
+    int mark = trailSize;
+    while(true) {
+      if(cancel != null && --untilCancelCheck <= 0) {
+        untilCancelCheck = CANCEL_CHECK_INTERVAL;
+        if(cancel.get()) {
+          cancelled = true;
+          undoTo(mark);
+          return true; // Stop everything
+        }
+      }
+      if(emptyCount == 0) {
+        if(solutionCount++ == 0 && target != null)
+          System.arraycopy(cells, 0, target, 0, cellCount);
+        undoTo(mark);
+        return solutionCount >= limit;
+      }
+
+      // Find the most constrained empty cell
+      int best = -1;
+      long bestMask = 0;
+      int bestCount = n + 1;
+      for(int i = 0; i < emptyCount; ++i) {
+        int cell = empties[i];
+        long mask = ~(rowUsed[rowOf[cell]] | colUsed[colOf[cell]] | boxUsed[boxOf[cell]]) & all;
+        int count = Long.bitCount(mask);
+        if(count < bestCount) {
+          best = cell;
+          bestMask = mask;
+          bestCount = count;
+          if(count <= 1)
+            break;
+        }
+      }
+
+      if(bestCount == 0) { // Dead end
+        undoTo(mark);
+        return false;
+      }
+      if(bestCount == 1) { // Naked single, no need to branch
+        ++nodeCount;
+        ++propagationCount;
+        place(best, Long.numberOfTrailingZeros(bestMask) + 1);
+        continue;
+      }
+      int hidden = placeHiddenSingle();
+      if(hidden < 0) { // Some value has nowhere left to go
+        undoTo(mark);
+        return false;
+      }
+      if(hidden > 0)
+        continue;
+
+      if(trace != null)
+        trace.branch(depth, best, bestCount);
+      for(long mask = bestMask; mask != 0; mask &= mask - 1) {
+        ++nodeCount;
+        place(best, Long.numberOfTrailingZeros(mask) + 1);
+        ++depth;
+        boolean stop = search();
+        --depth;
+        if(stop) {
+          undoTo(mark);
+          return true;
+        }
+        ++backtrackCount;
+        if(depth < shallowest)
+          shallowest = depth;
+        if(--untilBurst == 0)
+          endBurst();
+        undoTo(trailSize - 1);
+      }
+      undoTo(mark);
+      return false;
+    }
+  }
+
+  private void startBurst() {
+    burst = SolverEvents.BACKTRACK_BURST.isEnabled() ? new SolverEvents.BacktrackBurst() : null;
+    if(burst != null)
+      burst.begin();
+    untilBurst = BURST_SIZE;
+    shallowest = depth;
+  }
+
+  private void endBurst() {
+    if(burst != null)
+      burst.end();
+    if(burst != null && burst.shouldCommit()) {
+      burst.backtracks = BURST_SIZE;
+      burst.shallowestDepth = shallowest;
+      burst.depth = depth;
+      burst.nodes = nodeCount;
+      burst.commit();
+    }
+    startBurst();
+  }
+
+  /* Looks for a value that only fits in one empty cell of some row, column or box, and places it.
+   * Returns 1 if it placed one, 0 if there weren't any, or -1 if a value has no cell left at all. */
+  private int placeHiddenSingle() {
+    for(int u = 0; u < units.length; ++u) {
+      int[] unit = units[u];
+      long once = 0; // Values that fit in at least one empty cell
+      long twice = 0; // Values that fit in at least two
+      long used = 0;
+      for(int cell : unit) {
+        if(cells[cell] != 0) {
+          used |= Sudoku.maskOf(cells[cell]);
+          continue;
+        }
+        long mask = ~(rowUsed[rowOf[cell]] | colUsed[colOf[cell]] | boxUsed[boxOf[cell]]) & all;
+        twice |= once & mask;
+        once |= mask;
+      }
+      if((once | used) != all)
+        return -1;
+      long singles = once & ~twice;
+      if(singles == 0)
+        continue;
+      long bit = singles & -singles;
+      for(int cell : unit) {
+        if(cells[cell] == 0 && ((rowUsed[rowOf[cell]] | colUsed[colOf[cell]] | boxUsed[boxOf[cell]]) & bit) == 0) {
+          ++nodeCount;
+          ++propagationCount;
+          place(cell, Long.numberOfTrailingZeros(bit) + 1);
+          return 1;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private void place(int cell, int val) {
+    long bit = Sudoku.maskOf(val);
+    cells[cell] = val;
+    rowUsed[rowOf[cell]] |= bit;
+    colUsed[colOf[cell]] |= bit;
+    boxUsed[boxOf[cell]] |= bit;
+
+    // Swap it to the end of the empty cells
+    int pos = emptyPos[cell];
+    int last = empties[--emptyCount];
+    empties[pos] = last;
+    emptyPos[last] = pos;
+    empties[emptyCount] = cell;
+    emptyPos[cell] = emptyCount;
+
+    trail[trailSize++] = cell;
+  }
+
+  /* Takes back every placement made after the trail had the given size */
+  private void undoTo(int size) {
+    while(trailSize > size) {
+      int cell = trail[--trailSize];
+      long bit = ~Sudoku.maskOf(cells[cell]);
+      cells[cell] = 0;
+      rowUsed[rowOf[cell]] &= bit;
+      colUsed[colOf[cell]] &= bit;
+      boxUsed[boxOf[cell]] &= bit;
+      ++emptyCount; // It is still sitting right after the packed empty cells
+    }
+  }
+}
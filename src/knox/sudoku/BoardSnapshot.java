@@ -0,0 +1,180 @@
+package knox.sudoku;
+
+/* A board that never changes. with() gives back a new snapshot that has one value changed and shares
+ * every other row with the old one, so making "what if" boards is cheap, and any number of threads
+ * can look at (or branch off) the same snapshot without locking.
+ *
+ * Each snapshot also keeps the masks of the values used in every row, column and box, and the
+ * squares where every value is legal, like Sudoku does, so legality checks don't have to look at
+ * the board. */
+public final class BoardSnapshot {
+  private final int boxSize;
+  private final int size;
+  private final int[][] rows; // Never written to once the snapshot is made, so they can be shared
+  private final long[] rowMasks;
+  private final long[] colMasks;
+  private final long[] boxMasks;
+  private final SquareSet[] positions; // Never changed either, and shared the same way as the rows
+
+  BoardSnapshot(int boxSize, int[][] rows, long[] rowMasks, long[] colMasks, long[] boxMasks, SquareSet[] positions) {
+    this.boxSize = boxSize;
+    this.size = boxSize * boxSize;
+    this.rows = rows;
+    this.rowMasks = rowMasks;
+    this.colMasks = colMasks;
+    this.boxMasks = boxMasks;
+    this.positions = positions;
+  }
+
+  /* An empty board made of boxSize x boxSize boxes */
+  public static BoardSnapshot empty(int boxSize) {
+    int size = boxSize * boxSize;
+    int[] blank = new int[size];
+    int[][] rows = new int[size][];
+    for(int r = 0; r < size; ++r)
+      rows[r] = blank; // They can all be the same row, nothing ever writes to it
+    SquareSet everywhere = new SquareSet(size);
+    everywhere.fill();
+    SquareSet[] positions = new SquareSet[size + 1];
+    for(int val = 1; val <= size; ++val)
+      positions[val] = everywhere;
+    return new BoardSnapshot(boxSize, rows, new long[size], new long[size], new long[size], positions);
+  }
+
+  /* A snapshot of size*size values in row-major order, with 0 for blanks */
+  public static BoardSnapshot of(int[] cells) {
+    Sudoku sudoku = new Sudoku((int) Math.round(Math.sqrt(Math.sqrt(cells.length))));
+    sudoku.load(cells);
+    return sudoku.snapshot();
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getBoxSize() {
+    return boxSize;
+  }
+
+  public int get(int row, int col) {
+    return rows[row][col];
+  }
+
+  /* A snapshot with val at (row, col) and everything else the same as this one. Only that row, the
+   * masks and the positions of the old and new values are copied, everything else is shared. */
+  public BoardSnapshot with(int row, int col, int val) {
+    if(val < 0 || val > size) {
+      throw new IllegalArgumentException("\"" + val + "\"" + " is an invalid value on a sudoku board");
+    }
+    if(rows[row][col] == val)
+      return this;
+    int[][] newRows = rows.clone();
+    newRows[row] = rows[row].clone();
+    newRows[row][col] = val;
+
+    int box = getBox(row, col);
+    long[] newRowMasks = rowMasks.clone();
+    long[] newColMasks = colMasks.clone();
+    long[] newBoxMasks = boxMasks.clone();
+    int cr = row - row % boxSize;
+    int cc = col - col % boxSize;
+    long rowMask = 0, colMask = 0, boxMask = 0;
+    // The old value may still be somewhere else in the unit, so the masks are worked out again
+    for(int i = 0; i < size; ++i) {
+      rowMask |= bitOf(newRows[row][i]);
+      colMask |= bitOf(newRows[i][col]);
+      boxMask |= bitOf(newRows[cr + i / boxSize][cc + i % boxSize]);
+    }
+    newRowMasks[row] = rowMask;
+    newColMasks[col] = colMask;
+    newBoxMasks[box] = boxMask;
+
+    SquareSet[] newPositions = positions.clone();
+    BoardSnapshot snapshot = new BoardSnapshot(boxSize, newRows, newRowMasks, newColMasks, newBoxMasks, newPositions);
+    for(int changed : new int[] { rows[row][col], val }) {
+      if(changed == 0)
+        continue;
+      // Only squares that share a row, column or box with this one can have changed
+      SquareSet legal = newPositions[changed] = new SquareSet(positions[changed]);
+      for(int i = 0; i < size; ++i) {
+        snapshot.recheck(legal, changed, row, i);
+        snapshot.recheck(legal, changed, i, col);
+        snapshot.recheck(legal, changed, cr + i / boxSize, cc + i % boxSize);
+      }
+    }
+    return snapshot;
+  }
+
+  private void recheck(SquareSet legal, int val, int row, int col) {
+    if(isLegal(row, col, val))
+      legal.add(row, col);
+    else
+      legal.remove(row, col);
+  }
+
+  private static long bitOf(int val) {
+    return val == 0 ? 0 : Sudoku.maskOf(val);
+  }
+
+  private int getBox(int row, int col) {
+    return row / boxSize * boxSize + col / boxSize;
+  }
+
+  public boolean isBlank(int row, int col) {
+    return rows[row][col] == 0;
+  }
+
+  /* Same as Sudoku.isLegal */
+  public boolean isLegal(int row, int col, int val) {
+    if(val < 1 || val > size)
+      return false;
+    return (getUsedMask(row, col) & Sudoku.maskOf(val)) == 0;
+  }
+
+  /* Same as Sudoku.getUsedMask */
+  public long getUsedMask(int row, int col) {
+    return rowMasks[row] | colMasks[col] | boxMasks[getBox(row, col)];
+  }
+
+  /* Same as Sudoku.getLegalValuesMask */
+  public long getLegalValuesMask(int row, int col) {
+    return ~getUsedMask(row, col) & Sudoku.allValuesMask(size);
+  }
+
+  /* Same as Sudoku.getAllLegalPositions(int, SquareSet) */
+  public SquareSet getAllLegalPositions(int val, SquareSet out) {
+    if(val < 1 || val > size) {
+      out.clear();
+      return out;
+    }
+    return out.set(positions[val]);
+  }
+
+  /* Copies the board into size*size values in row-major order, with 0 for blanks */
+  public int[] copyTo(int[] cells) {
+    for(int r = 0; r < size; ++r)
+      System.arraycopy(rows[r], 0, cells, r * size, size);
+    return cells;
+  }
+
+  /* The row itself, for Sudoku to share with its next snapshot. Don't write to it. */
+  int[] row(int row) {
+    return rows[row];
+  }
+
+  /* Same for the positions of a value */
+  SquareSet positions(int val) {
+    return positions[val];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(size * size * 3 + 1);
+    for(int[] row : rows) {
+      for(int val : row)
+        sb.append(val).append(' ');
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
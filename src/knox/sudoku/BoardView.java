@@ -0,0 +1,480 @@
+package knox.sudoku;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+/* The whole board as one component that paints every square itself, as a lighter alternative to
+ * SudokuGUI's button per square.
+ *
+ * A click is turned into a square with a division instead of searching the buttons, and there is
+ * one listener for the mouse, one for the keyboard and one on the model. Every animation (the
+ * Super Swap wiggle and the disco at the end) runs off one frame clock, which only runs while
+ * something is moving. When a square changes only its own rectangle is repainted.
+ *
+ * Typing a value puts it in the selected square, like the buttons do, and squares that make it
+ * illegal light up. With no square selected, typing a value shows every empty square it could go
+ * in, and the ones where it is the only choice in a different colour. During a Super Swap the
+ * filled squares wiggle; press on one to see where its value could go, and drag it onto one of
+ * those to swap them.
+ *
+ * Usage: BoardView [file] */
+public class BoardView extends JComponent {
+  private static final long serialVersionUID = 1L;
+
+  private static final int FRAME_MILLIS = 50; // 20 frames a second, as fast as the buttons wiggled
+  private static final int DISCO_FRAMES = 5; // New disco colours every 250 ms
+  private static final int SWAPS_PER_GAME = 2;
+  private static final int MARGIN = 5;
+  private static final int BOARD_SIZE = 810;
+  private static final Font FONT = new Font("Verdana", Font.BOLD, 40); // For 90 pixel squares
+  private static final Color FONT_COLOR = Color.BLACK;
+  private static final Color BACKGROUND_COLOR = Color.WHITE;
+  private static final Color SELECTED_COLOR = Color.CYAN;
+  private static final Color ILLEGAL_COLOR = Color.RED;
+  private static final Color SWAP_FROM_COLOR = Color.YELLOW;
+  private static final Color SWAP_TO_COLOR = Color.GREEN;
+  private static final Color CANDIDATE_COLOR = new Color(0xC8F0C8);
+  private static final Color HIDDEN_SINGLE_COLOR = Color.GREEN;
+
+  private final Sudoku sudoku;
+  private final MoveJournal journal;
+  private final Timer clock = new Timer(FRAME_MILLIS, e -> tick());
+  private int frame = 0;
+
+  private int size; // Width of the board the arrays below are for
+  private int selected = -1; // Square that typed values go in
+  private Color[] highlights; // null for squares that aren't highlighted
+  private SquareSet violations;
+
+  // Super Swap. While it is on, filled squares wiggle, each at its own speed.
+  private int swapsRemaining = SWAPS_PER_GAME;
+  private boolean swapping = false;
+  private int dragFrom = -1;
+  private Point dragPoint;
+  private SquareSet swapTargets;
+  private float[] wiggleIndex;
+  private float[] wiggleSpeed;
+  private float[] wiggleVariation;
+
+  private boolean disco = false;
+  private Color[] discoColors;
+
+  public BoardView(Sudoku sudoku, MoveJournal journal) {
+    this.sudoku = sudoku;
+    this.journal = journal;
+    resize();
+    setFocusable(true);
+    setOpaque(true);
+
+    sudoku.addChangeListener(new Sudoku.ChangeListener() {
+      @Override
+      public void squareChanged(int row, int col) {
+        if(sudoku.getSize() == size)
+          repaintSquare(row * size + col);
+      }
+
+      @Override
+      public void boardCleared() {
+        if(sudoku.getSize() != size)
+          resize();
+        swapsRemaining = SWAPS_PER_GAME; // A new board is a new game
+        swapping = false;
+        dragFrom = -1;
+        selected = -1;
+        clearHighlights();
+        repaint();
+      }
+    });
+
+    MouseAdapter mouse = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        requestFocusInWindow();
+        pressed(squareAt(e.getX(), e.getY()));
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if(dragFrom < 0)
+          return;
+        dragPoint = e.getPoint();
+        repaint(); // The dragged value can be anywhere
+      }
+
+      @Override
+      public void mouseReleased(MouseEvent e) {
+        if(dragFrom >= 0)
+          dropped(squareAt(e.getX(), e.getY()));
+      }
+    };
+    addMouseListener(mouse);
+    addMouseMotionListener(mouse);
+
+    addKeyListener(new KeyAdapter() {
+      @Override
+      public void keyTyped(KeyEvent e) {
+        typed(Sudoku.valueOf(e.getKeyChar(), size));
+      }
+    });
+  }
+
+  /* Makes the per-square state fit the board */
+  private void resize() {
+    size = sudoku.getSize();
+    int squares = size * size;
+    selected = -1;
+    highlights = new Color[squares];
+    violations = sudoku.newSquareSet();
+    swapTargets = sudoku.newSquareSet();
+    dragFrom = -1;
+    wiggleIndex = new float[squares];
+    wiggleSpeed = new float[squares];
+    wiggleVariation = new float[squares];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for(int i = 0; i < squares; ++i) {
+      wiggleSpeed[i] = random.nextInt(8, 14) / 15f; // Some will rotate faster / slower
+      wiggleVariation[i] = random.nextFloat() / 2 + 4.5f;
+    }
+    discoColors = new Color[squares];
+    int cell = Math.max(BOARD_SIZE / size, 30);
+    setPreferredSize(new Dimension(cell * size + MARGIN * 2, cell * size + MARGIN * 2));
+    revalidate();
+  }
+
+  /* Starts a Super Swap: every filled square wiggles until one has been dragged onto another. Like
+   * the buttons, there are only two a game, and one can't be started while another is going. Returns
+   * whether it started. */
+  public boolean startSuperSwap() {
+    if(swapsRemaining <= 0 || swapping)
+      return false;
+    --swapsRemaining;
+    clearHighlights();
+    swapping = true;
+    for(int i = 0; i < wiggleIndex.length; ++i)
+      wiggleIndex[i] = 0.1f;
+    animate();
+    return true;
+  }
+
+  public int getSwapsRemaining() {
+    return swapsRemaining;
+  }
+
+  public boolean isSwapping() {
+    return swapping;
+  }
+
+  /* Lights up a square in the given colour until the next click or key */
+  public void highlight(int row, int col, Color color) {
+    int i = row * size + col;
+    highlights[i] = color;
+    repaintSquare(i);
+  }
+
+  public void clearHighlights() {
+    swapTargets.clear();
+    for(int i = 0; i < highlights.length; ++i) {
+      if(highlights[i] != null) {
+        highlights[i] = null;
+        repaintSquare(i);
+      }
+    }
+  }
+
+  /* Turns the disco on once the board is solved, and off again if it isn't any more */
+  public void checkIfGameOver() {
+    boolean solved = sudoku.isSolved();
+    if(solved == disco)
+      return;
+    disco = solved;
+    Arrays.fill(discoColors, null);
+    if(disco)
+      animate();
+    repaint();
+  }
+
+  private void animate() {
+    if(!clock.isRunning())
+      clock.start();
+  }
+
+  /* One frame of every animation. Only the squares that moved or changed colour are repainted, so
+   * a frame where the disco keeps its colours costs nothing. The clock stops when nothing is
+   * moving. */
+  private void tick() {
+    ++frame;
+    if(!swapping && !disco) {
+      clock.stop();
+      return;
+    }
+    if(disco && frame % DISCO_FRAMES == 0) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for(int i = 0; i < discoColors.length; ++i) {
+        discoColors[i] = new Color(random.nextInt(1 << 24));
+        repaintSquare(i);
+      }
+    }
+    if(swapping) {
+      for(int i = 0; i < wiggleIndex.length; ++i) {
+        wiggleIndex[i] += wiggleSpeed[i];
+        if(i != dragFrom && !sudoku.isBlank(i / size, i % size))
+          repaintSquare(i);
+      }
+    }
+  }
+
+  private void pressed(int square) {
+    if(square < 0)
+      return;
+    int row = square / size;
+    int col = square % size;
+    if(swapping) {
+      if(sudoku.isBlank(row, col))
+        return;
+      // Work out where the value could go on a copy of the board without it
+      clearHighlights();
+      dragFrom = square;
+      dragPoint = null;
+      sudoku.snapshot().with(row, col, 0).getAllLegalPositions(sudoku.get(row, col), swapTargets);
+      for(int i = swapTargets.first(); i >= 0; i = swapTargets.next(i + 1))
+        highlight(swapTargets.rowOf(i), swapTargets.colOf(i), SWAP_TO_COLOR);
+      highlight(row, col, SWAP_FROM_COLOR);
+      return;
+    }
+    clearHighlights();
+    int old = selected;
+    selected = square == selected || !sudoku.isBlank(row, col) ? -1 : square;
+    repaintSquare(old);
+    repaintSquare(selected);
+  }
+
+  private void dropped(int square) {
+    int from = dragFrom;
+    dragFrom = -1;
+    dragPoint = null;
+    if(square >= 0 && square != from && swapTargets.contains(square)) {
+      journal.swap(from / size, from % size, square / size, square % size);
+      swapping = false;
+      Arrays.fill(wiggleIndex, 0);
+      checkIfGameOver();
+    }
+    clearHighlights();
+    repaint();
+  }
+
+  private void typed(int val) {
+    if(val < 0 || val > size)
+      return;
+    clearHighlights();
+    if(selected < 0) {
+      showPositions(val);
+      return;
+    }
+    int row = selected / size;
+    int col = selected % size;
+    if(!journal.set(row, col, val, violations)) {
+      for(int i = violations.first(); i >= 0; i = violations.next(i + 1))
+        highlight(violations.rowOf(i), violations.colOf(i), ILLEGAL_COLOR);
+    }
+    checkIfGameOver();
+  }
+
+  /* Lights up where val could go. Both sets come straight out of the model's placement index. */
+  private void showPositions(int val) {
+    if(val == 0)
+      return;
+    SquareSet squares = sudoku.getCandidatePositions(val, violations);
+    for(int i = squares.first(); i >= 0; i = squares.next(i + 1))
+      highlight(squares.rowOf(i), squares.colOf(i), CANDIDATE_COLOR);
+    sudoku.getHiddenSingles(val, squares);
+    for(int i = squares.first(); i >= 0; i = squares.next(i + 1))
+      highlight(squares.rowOf(i), squares.colOf(i), HIDDEN_SINGLE_COLOR);
+  }
+
+  /* Width of a square in pixels */
+  private int squareSize() {
+    return Math.max(1, Math.min(getWidth(), getHeight()) - MARGIN * 2) / size;
+  }
+
+  /* Left edge of the board, which is centred */
+  private int left() {
+    return (getWidth() - squareSize() * size) / 2;
+  }
+
+  private int top() {
+    return (getHeight() - squareSize() * size) / 2;
+  }
+
+  /* The square under a point, or -1 if it is off the board */
+  private int squareAt(int x, int y) {
+    int s = squareSize();
+    int dx = x - left();
+    int dy = y - top();
+    if(dx < 0 || dy < 0 || dx >= s * size || dy >= s * size)
+      return -1;
+    return dy / s * size + dx / s;
+  }
+
+  private void repaintSquare(int square) {
+    if(square < 0)
+      return;
+    int s = squareSize();
+    // A little extra, since a wiggling square pokes out of its corners
+    repaint(left() + square % size * s - s / 4, top() + square / size * s - s / 4, s * 3 / 2, s * 3 / 2);
+  }
+
+  @Override
+  protected void paintComponent(Graphics graphics) {
+    Graphics2D g = (Graphics2D) graphics.create();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    g.setColor(BACKGROUND_COLOR);
+    g.fillRect(0, 0, getWidth(), getHeight());
+
+    int s = squareSize();
+    int x0 = left();
+    int y0 = top();
+    g.setFont(FONT.deriveFont(FONT.getSize2D() * s / 90));
+    FontMetrics metrics = g.getFontMetrics();
+    Rectangle clip = g.getClipBounds();
+    for(int i = 0; i < size * size; ++i) {
+      int x = x0 + i % size * s;
+      int y = y0 + i / size * s;
+      if(clip == null || clip.intersects(x - s / 4, y - s / 4, s * 3 / 2, s * 3 / 2))
+        paintSquare(g, i, x, y, s, metrics);
+    }
+
+    // Thin lines around every square and thick ones around every box
+    int boxSize = sudoku.getBoxSize();
+    g.setColor(Color.BLACK);
+    for(int i = 0; i <= size; ++i) {
+      int width = i % boxSize == 0 ? 4 : 1;
+      g.fillRect(x0 + i * s - width / 2, y0, width, s * size);
+      g.fillRect(x0, y0 + i * s - width / 2, s * size, width);
+    }
+
+    if(dragFrom >= 0 && dragPoint != null) {
+      String text = Sudoku.symbolOf(sudoku.get(dragFrom / size, dragFrom % size));
+      g.setColor(FONT_COLOR);
+      g.drawString(text, dragPoint.x - metrics.stringWidth(text) / 2, dragPoint.y + metrics.getAscent() / 2);
+    }
+    g.dispose();
+  }
+
+  private void paintSquare(Graphics2D g, int i, int x, int y, int s, FontMetrics metrics) {
+    int row = i / size;
+    int col = i % size;
+    int val = sudoku.get(row, col);
+    Graphics2D sg = g;
+    if(swapping && val != 0 && i != dragFrom) {
+      // Same wobble the buttons had, but around the middle of the square
+      float w = wiggleIndex[i];
+      double angle = Math.sin(w) * Math.sin(w / 1.23) * (1 + Math.sin(w / wiggleVariation[i]) / 6) / 20;
+      sg = (Graphics2D) g.create();
+      sg.rotate(angle, x + s / 2.0, y + s / 2.0);
+    }
+
+    Color background = BACKGROUND_COLOR;
+    if(disco && discoColors[i] != null)
+      background = discoColors[i];
+    else if(highlights[i] != null)
+      background = highlights[i];
+    else if(i == selected && val == 0)
+      background = SELECTED_COLOR;
+    sg.setColor(background);
+    sg.fillRect(x, y, s, s);
+
+    String text = val != 0 ? Sudoku.symbolOf(val) : i == selected ? "_" : null;
+    if(text != null) {
+      sg.setColor(val == 0 ? Color.RED : FONT_COLOR);
+      sg.drawString(text, x + (s - metrics.stringWidth(text)) / 2, y + (s - metrics.getHeight()) / 2 + metrics.getAscent());
+    }
+    if(sg != g)
+      sg.dispose();
+  }
+
+  /* Plays the game with the board view instead of the buttons */
+  public static void main(String[] args) {
+    SwingUtilities.invokeLater(() -> {
+      Sudoku sudoku = new Sudoku();
+      sudoku.load(args.length > 0 ? args[0] : "easy1.txt");
+      MoveJournal journal = new MoveJournal(sudoku);
+      BoardView view = new BoardView(sudoku, journal);
+      PuzzleGenerator generator = new PuzzleGenerator(System.nanoTime());
+
+      JFrame frame = new JFrame("Sudoku!");
+      JMenuBar menuBar = new JMenuBar();
+      JMenu file = new JMenu("File");
+      JButton swap = new JButton();
+      Runnable swapText = () -> swap.setText("Activate Super Swap! (" + view.getSwapsRemaining() + " remaining)");
+      swapText.run();
+      JMenuItem newGame = new JMenuItem("New Game");
+      newGame.addActionListener(e -> {
+        sudoku.load(generator.generate(PuzzleGenerator.Difficulty.MEDIUM, new int[81]));
+        journal.clear();
+        view.checkIfGameOver();
+        swapText.run();
+      });
+      file.add(newGame);
+      menuBar.add(file);
+
+      JMenu edit = new JMenu("Edit");
+      JMenuItem undo = new JMenuItem("Undo");
+      undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+      undo.addActionListener(e -> {
+        journal.undo();
+        view.checkIfGameOver();
+      });
+      edit.add(undo);
+      JMenuItem redo = new JMenuItem("Redo");
+      redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+      redo.addActionListener(e -> {
+        journal.redo();
+        view.checkIfGameOver();
+      });
+      edit.add(redo);
+      menuBar.add(edit);
+
+      swap.addActionListener(e -> {
+        view.startSuperSwap();
+        swapText.run();
+        view.requestFocusInWindow();
+      });
+      menuBar.add(swap);
+
+      frame.setJMenuBar(menuBar);
+      frame.getContentPane().add(view, BorderLayout.CENTER);
+      frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+      frame.pack();
+      frame.setLocation(100, 100);
+      frame.setVisible(true);
+      view.requestFocusInWindow();
+    });
+  }
+}
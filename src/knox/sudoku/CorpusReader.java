@@ -0,0 +1,313 @@
+package knox.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/* Reads big files of puzzles by memory-mapping them and parsing the bytes directly into cell arrays.
+ * Nothing is allocated per puzzle, which matters when a corpus has tens of millions of them.
+ *
+ * Two formats are understood, and which one a file uses is worked out from its first line:
+ *  - LINE: one puzzle per line, 81 characters in row-major order with '0' or '.' for blanks
+ *  - GRID: 9 lines of 9 values separated by spaces, like Sudoku.toSaveString writes. Any line that
+ *    doesn't start with a value (such as the "EXT:" line the GUI adds to saves) is skipped.
+ *
+ * split() cuts the file into byte ranges that start on record boundaries, so several threads can
+ * each read their own range with their own Cursor. A record belongs to the range it starts in. A
+ * LINE file can be split anywhere, but a line of a GRID file doesn't say which row of its board it
+ * is, so splitting one takes a quick pass over the file counting grid lines from the start. */
+public class CorpusReader implements Closeable {
+  public enum Format { LINE, GRID }
+
+  // Result of Cursor.nextRecord
+  public static final int END = 0;
+  public static final int RECORD = 1;
+  public static final int MALFORMED = -1;
+
+  private static final int CELLS = 81;
+  private static final long WINDOW_SIZE = 1L << 30; // Most that is mapped at once
+
+  private final FileChannel channel;
+  private final long size;
+  private final Format format;
+
+  public CorpusReader(String filename) throws IOException {
+    channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    size = channel.size();
+    format = detectFormat();
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /* Size of the file in bytes */
+  public long size() {
+    return size;
+  }
+
+  /* A cursor over the whole file */
+  public Cursor cursor() {
+    return new Cursor(0, size);
+  }
+
+  /* A cursor over the records that start in [start, end). Use the boundaries from split(). */
+  public Cursor cursor(long start, long end) {
+    return new Cursor(start, end);
+  }
+
+  /* Splits the file into (at most) the given number of ranges of about the same size. Returns the
+   * boundaries, so range i is [bounds[i], bounds[i+1]). Every boundary is the start of a record. */
+  public long[] split(int parts) {
+    long[] bounds = new long[parts + 1];
+    Cursor scan = new Cursor(0, size);
+    if(format == Format.GRID) {
+      scan.alignGrids(bounds);
+    } else {
+      for(int i = 1; i < parts; ++i) {
+        long target = Math.max(size * i / parts, bounds[i - 1]);
+        bounds[i] = scan.alignForward(target);
+      }
+    }
+    bounds[parts] = size;
+    return bounds;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /* Looks at how many values are on the first non-blank line */
+  private Format detectFormat() throws IOException {
+    Cursor scan = new Cursor(0, size);
+    long p = 0;
+    while(p < size) {
+      int values = 0;
+      byte b;
+      while(p < size && (b = scan.byteAt(p)) != '\n') {
+        if(isValue(b))
+          ++values;
+        ++p;
+      }
+      if(values >= CELLS)
+        return Format.LINE;
+      if(values > 0)
+        return Format.GRID;
+      ++p;
+    }
+    return Format.LINE; // Empty, so it doesn't really matter
+  }
+
+  private static boolean isValue(byte b) {
+    return (b >= '0' && b <= '9') || b == '.';
+  }
+
+  private static boolean isBlank(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  /* Reads records from one range of the file. Not thread safe; give every thread its own. */
+  public class Cursor {
+    private final long end;
+    private long pos;
+    private long malformed;
+
+    // Currently mapped window of the file
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    private Cursor(long start, long end) {
+      if(start < 0 || end > size || start > end) {
+        throw new IllegalArgumentException("[" + start + ", " + end + ") is not a range of the file");
+      }
+      this.pos = start;
+      this.end = end;
+    }
+
+    /* Reads the next puzzle into cells, skipping anything malformed. Returns false at the end. */
+    public boolean next(int[] cells) {
+      return next(cells, 0);
+    }
+
+    /* Same as next(int[]), but writes the 81 values starting at cells[offset] */
+    public boolean next(int[] cells, int offset) {
+      int result;
+      while((result = nextRecord(cells, offset)) == MALFORMED);
+      return result == RECORD;
+    }
+
+    /* Reads the next record into cells starting at offset. Returns RECORD if it was a puzzle,
+     * MALFORMED if it wasn't (cells may be partly written), or END if there are no more. */
+    public int nextRecord(int[] cells, int offset) {
+      return format == Format.LINE ? nextLine(cells, offset) : nextGrid(cells, offset);
+    }
+
+    /* Number of malformed records skipped or returned so far */
+    public long getMalformedCount() {
+      return malformed;
+    }
+
+    /* Where the next record will be read from */
+    public long position() {
+      return pos;
+    }
+
+    private int nextLine(int[] cells, int offset) {
+      while(pos < end) {
+        int count = 0;
+        boolean bad = false;
+        byte b;
+        while(pos < size && (b = byteAt(pos)) != '\n') {
+          ++pos;
+          if(b == '.') {
+            if(count < CELLS) cells[offset + count] = 0;
+            ++count;
+          } else if(b >= '0' && b <= '9') {
+            if(count < CELLS) cells[offset + count] = b - '0';
+            ++count;
+          } else if(!isBlank(b)) {
+            bad = true;
+          }
+        }
+        ++pos; // Past the '\n'
+        if(count == 0 && !bad)
+          continue; // Blank line
+        if(count != CELLS || bad) {
+          ++malformed;
+          return MALFORMED;
+        }
+        return RECORD;
+      }
+      return END;
+    }
+
+    private int nextGrid(int[] cells, int offset) {
+      int count = 0;
+      boolean bad = false;
+      // Keep reading lines until a whole board has been read. Only the first line of the board
+      // has to start in this range.
+      while(pos < size && (count > 0 || pos < end)) {
+        byte first = skipBlanks();
+        if(first == '\n' || pos >= size) { // Blank line
+          ++pos;
+          continue;
+        }
+        if(!isValue(first)) { // Metadata or a comment
+          skipLine();
+          continue;
+        }
+        // One line of the grid
+        byte b;
+        while(pos < size && (b = byteAt(pos)) != '\n') {
+          ++pos;
+          if(b == '.') {
+            if(count < CELLS) cells[offset + count] = 0;
+            ++count;
+          } else if(b >= '0' && b <= '9') {
+            if(count < CELLS) cells[offset + count] = b - '0';
+            ++count;
+          } else if(!isBlank(b)) {
+            bad = true;
+          }
+        }
+        ++pos;
+        if(count % 9 != 0) { // Every line of the grid has a whole row
+          bad = true;
+        }
+        if(count >= CELLS) {
+          if(bad) {
+            ++malformed;
+            return MALFORMED;
+          }
+          return RECORD;
+        }
+      }
+      if(count > 0) { // The file ended in the middle of a board
+        ++malformed;
+        return MALFORMED;
+      }
+      return END;
+    }
+
+    /* Moves pos past spaces and returns the byte it stopped on */
+    private byte skipBlanks() {
+      byte b = 0;
+      while(pos < size && isBlank(b = byteAt(pos)))
+        ++pos;
+      return b;
+    }
+
+    private void skipLine() {
+      while(pos < size && byteAt(pos) != '\n')
+        ++pos;
+      ++pos;
+    }
+
+    /* Finds the first line (so the first LINE record) at or after the given position */
+    private long alignForward(long target) {
+      if(target <= 0)
+        return 0;
+      if(target >= size)
+        return size;
+      long p = target;
+      while(p < size && byteAt(p - 1) != '\n')
+        ++p;
+      return p;
+    }
+
+    /* Fills in bounds[1..parts-1] for a GRID file. It reads the lines from the start the same way
+     * nextGrid does, adding up the values on grid lines until there is a whole board, so it knows
+     * which lines start a board whether or not there is anything between the boards. */
+    private void alignGrids(long[] bounds) {
+      int parts = bounds.length - 1;
+      int next = 1;
+      int count = 0; // Values of the board read so far
+      long p = 0;
+      while(next < parts) {
+        if(count == 0 && p >= size * next / parts) {
+          bounds[next++] = Math.min(p, size);
+          continue;
+        }
+        if(p >= size) {
+          bounds[next++] = size;
+          continue;
+        }
+        while(p < size && isBlank(byteAt(p)))
+          ++p;
+        boolean grid = p < size && isValue(byteAt(p));
+        int values = 0;
+        byte b;
+        while(p < size && (b = byteAt(p)) != '\n') {
+          if(isValue(b))
+            ++values;
+          ++p;
+        }
+        ++p;
+        if(grid && (count += values) >= CELLS)
+          count = 0;
+      }
+    }
+
+    private byte byteAt(long p) {
+      if(p < windowStart || p >= windowEnd)
+        map(p);
+      return window.get((int) (p - windowStart));
+    }
+
+    private void map(long p) {
+      try {
+        long length = Math.min(WINDOW_SIZE, size - p);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, p, length);
+        windowStart = p;
+        windowEnd = p + length;
+      } catch(IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
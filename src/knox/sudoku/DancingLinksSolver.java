@@ -0,0 +1,285 @@
+package knox.sudoku;
+
+import java.util.Arrays;
+
+/* Solves Sudoku boards with Knuth's Dancing Links (Algorithm X).
+ *
+ * An N x N board is turned into an exact cover problem with 4*N*N columns (every cell is filled, and every
+ * row, column and box has each value once) and N*N*N candidate rows (one per cell and value), so a
+ * 9x9 board has 324 columns and 729 rows.
+ * All of the nodes are allocated once in the constructor as plain int arrays, and solving a board
+ * always unlinks and relinks them in the reverse order, so one solver can be reused for any number
+ * of boards without allocating anything. It is NOT thread safe, so use one per thread.
+ *
+ * Boards are passed around as N*N ints in row-major order (see Sudoku.copyTo), with 0 for blanks. */
+public class DancingLinksSolver implements SudokuSolver {
+  private static final int ROOT = 0;
+
+  private final int boxSize;
+  private final int n; // Width of the board
+  private final int cells;
+  private final int columns;
+
+  // Node links. Node 0 is the root, nodes 1..columns are the column headers,
+  // and after that every candidate row gets 4 nodes in a row.
+  private final int[] left;
+  private final int[] right;
+  private final int[] up;
+  private final int[] down;
+  private final int[] column; // Header node of each node
+  private final int[] rowOf; // Candidate row of each node (cell * n + value - 1)
+  private final int[] size; // Number of nodes in each column, indexed by header node
+  private final int[] rowStart; // First node of each candidate row
+
+  // Search state
+  private final int[] stack; // Chosen node at every depth
+  private final int[] clueRows; // Rows that were covered for the given values
+  private final long[] rowUsed;
+  private final long[] colUsed;
+  private final long[] boxUsed;
+  private int[] target; // Board to write the first solution into, if any
+  private int solutionCount;
+  private int limit; // Stop searching once this many solutions are found
+  private long nodeCount;
+  private long backtrackCount;
+
+  /* A solver for 9x9 boards */
+  public DancingLinksSolver() {
+    this(3);
+  }
+
+  /* A solver for boards made of boxSize x boxSize boxes */
+  public DancingLinksSolver(int boxSize) {
+    if(boxSize < 1 || boxSize > Sudoku.MAX_BOX_SIZE) {
+      throw new IllegalArgumentException("Boxes have to be between 1x1 and " + Sudoku.MAX_BOX_SIZE + "x" + Sudoku.MAX_BOX_SIZE);
+    }
+    this.boxSize = boxSize;
+    n = boxSize * boxSize;
+    cells = n * n;
+    columns = cells * 4;
+    int rows = cells * n;
+    stack = new int[cells];
+    clueRows = new int[cells];
+    rowUsed = new long[n];
+    colUsed = new long[n];
+    boxUsed = new long[n];
+
+    int nodes = 1 + columns + rows * 4;
+    left = new int[nodes];
+    right = new int[nodes];
+    up = new int[nodes];
+    down = new int[nodes];
+    column = new int[nodes];
+    rowOf = new int[nodes];
+    size = new int[columns + 1];
+    rowStart = new int[rows];
+
+    // Circular list of headers, starting at the root
+    for(int h = 0; h <= columns; ++h) {
+      left[h] = h == 0 ? columns : h - 1;
+      right[h] = h == columns ? 0 : h + 1;
+      up[h] = h;
+      down[h] = h;
+      column[h] = h;
+    }
+
+    int first = columns + 1;
+    for(int r = 0; r < n; ++r) {
+      for(int c = 0; c < n; ++c) {
+        int box = getBox(r, c);
+        for(int v = 0; v < n; ++v) {
+          int row = (r * n + c) * n + v;
+          rowStart[row] = first;
+          // Cell, row-value, column-value and box-value constraints
+          int[] headers = {
+              1 + r * n + c,
+              1 + cells + r * n + v,
+              1 + cells * 2 + c * n + v,
+              1 + cells * 3 + box * n + v };
+          for(int i = 0; i < 4; ++i) {
+            int h = headers[i];
+            int node = first + i;
+            column[node] = h;
+            rowOf[node] = row;
+            // Append at the bottom of the column
+            up[node] = up[h];
+            down[node] = h;
+            down[up[h]] = node;
+            up[h] = node;
+            ++size[h];
+            // Link horizontally within the candidate row
+            left[node] = i == 0 ? first + 3 : node - 1;
+            right[node] = i == 3 ? first : node + 1;
+          }
+          first += 4;
+        }
+      }
+    }
+  }
+
+  private int getBox(int row, int col) {
+    return row / boxSize * boxSize + col / boxSize;
+  }
+
+  @Override
+  public boolean solve(int[] cells) {
+    return run(cells, cells, 1) > 0;
+  }
+
+  @Override
+  public int countSolutions(int[] cells, int limit) {
+    return run(cells, null, limit);
+  }
+
+  /* Searches for up to limit solutions of cells, writing the first one into target if it isn't null.
+   * Returns the number found. */
+  private int run(int[] cells, int[] target, int limit) {
+    if(cells.length != this.cells) {
+      throw new IllegalArgumentException("Expected " + this.cells + " cells but got " + cells.length);
+    }
+    long began = Metrics.ENABLED ? System.nanoTime() : 0;
+    SolverEvents.Solve event = SolverEvents.SOLVE.isEnabled() ? new SolverEvents.Solve() : null;
+    if(event != null)
+      event.begin();
+    nodeCount = 0;
+    backtrackCount = 0;
+
+    // Cover the rows of all the values that are already on the board
+    int clues = 0;
+    boolean valid = true;
+    Arrays.fill(rowUsed, 0);
+    Arrays.fill(colUsed, 0);
+    Arrays.fill(boxUsed, 0);
+    for(int i = 0; i < this.cells; ++i) {
+      int val = cells[i];
+      if(val == 0)
+        continue;
+      if(val < 0 || val > n) {
+        valid = false;
+        break;
+      }
+      int r = i / n;
+      int c = i % n;
+      int b = getBox(r, c);
+      long bit = Sudoku.maskOf(val);
+      if(((rowUsed[r] | colUsed[c] | boxUsed[b]) & bit) != 0) {
+        valid = false; // Two of the same value in a row, column or box. Covering it would break the links.
+        break;
+      }
+      rowUsed[r] |= bit;
+      colUsed[c] |= bit;
+      boxUsed[b] |= bit;
+      int start = rowStart[i * n + val - 1];
+      for(int node = start; node < start + 4; ++node)
+        cover(column[node]);
+      clueRows[clues++] = start;
+    }
+
+    int clueCount = clues;
+    this.target = target;
+    this.limit = limit;
+    solutionCount = 0;
+    if(valid && limit > 0)
+      search(0);
+    this.target = null;
+
+    // Put everything back the way it was, in reverse
+    while(clues > 0) {
+      int start = clueRows[--clues];
+      for(int node = start + 3; node >= start; --node)
+        uncover(column[node]);
+    }
+    if(Metrics.ENABLED)
+      Metrics.solved(began, nodeCount, backtrackCount, 0);
+    if(event != null)
+      event.end();
+    if(event != null && event.shouldCommit()) {
+      event.solver = "dlx";
+      event.size = n;
+      event.clues = clueCount;
+      event.solutions = solutionCount;
+      event.nodes = nodeCount;
+      event.backtracks = backtrackCount;
+      event.commit();
+    }
+    return solutionCount;
+  }
+
+  /* Number of candidate rows tried during the last solve */
+  @Override
+  public long getNodeCount() {
+    return nodeCount;
+  }
+
+  /* Number of candidate rows that were tried and had to be taken back during the last solve */
+  @Override
+  public long getBacktrackCount() {
+    return backtrackCount;
+  }
+
+  /* Returns true once enough solutions have been found to stop */
+  private boolean search(int depth) {
+    if(right[ROOT] == ROOT) { // Every constraint is satisfied
+      if(solutionCount++ == 0 && target != null) {
+        for(int k = 0; k < depth; ++k) {
+          int row = rowOf[stack[k]];
+          target[row / n] = row % n + 1;
+        }
+      }
+      return solutionCount >= limit;
+    }
+
+    // Choose the column with the fewest rows left
+    int best = right[ROOT];
+    for(int h = right[best]; h != ROOT; h = right[h]) {
+      if(size[h] < size[best]) {
+        best = h;
+        if(size[h] <= 1)
+          break;
+      }
+    }
+    if(size[best] == 0)
+      return false;
+
+    boolean found = false;
+    cover(best);
+    for(int node = down[best]; node != best && !found; node = down[node]) {
+      ++nodeCount;
+      stack[depth] = node;
+      for(int j = right[node]; j != node; j = right[j])
+        cover(column[j]);
+      int before = solutionCount;
+      found = search(depth + 1);
+      for(int j = left[node]; j != node; j = left[j])
+        uncover(column[j]);
+      if(solutionCount == before)
+        ++backtrackCount; // A dead end, as opposed to a branch that had solutions to count
+    }
+    uncover(best);
+    return found;
+  }
+
+  private void cover(int h) {
+    right[left[h]] = right[h];
+    left[right[h]] = left[h];
+    for(int i = down[h]; i != h; i = down[i]) {
+      for(int j = right[i]; j != i; j = right[j]) {
+        down[up[j]] = down[j];
+        up[down[j]] = up[j];
+        --size[column[j]];
+      }
+    }
+  }
+
+  private void uncover(int h) {
+    for(int i = up[h]; i != h; i = up[i]) {
+      for(int j = left[i]; j != i; j = left[j]) {
+        ++size[column[j]];
+        down[up[j]] = j;
+        up[down[j]] = j;
+      }
+    }
+    right[left[h]] = h;
+    left[right[h]] = h;
+  }
+}
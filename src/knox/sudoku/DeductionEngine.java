@@ -0,0 +1,569 @@
+package knox.sudoku;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/* Works out the next step of a puzzle the way a person would, and says which technique it used.
+ *
+ * It keeps a candidate mask for every empty square, starting from the legal values and narrowing
+ * them down as steps are applied, and tries the techniques from easiest to hardest: naked and hidden
+ * singles, locked candidates, naked and hidden pairs and triples, X-Wing and Swordfish. The first
+ * one that finds something wins, so the technique of a step is a fair grade of how hard it was.
+ *
+ * It only looks again where something changed. Cells that get down to one candidate go on a queue,
+ * every row, column and box remembers which techniques have already come up empty on it since its
+ * candidates last changed, and so does every value for the fish. Stepping through a whole puzzle is
+ * about one pass over the board instead of a full rescan per step.
+ *
+ * The engine follows the Sudoku it was made with, listening for the squares that change. Values
+ * that were filled in since the last call are picked up on their own, looking only at those
+ * squares; anything else (a value taken back or changed, a new board) starts it over from the
+ * board. Not thread safe. */
+public class DeductionEngine {
+
+  public enum Technique {
+    NAKED_SINGLE("Naked Single"),
+    HIDDEN_SINGLE("Hidden Single"),
+    LOCKED_CANDIDATES("Locked Candidates"),
+    NAKED_PAIR("Naked Pair"),
+    HIDDEN_PAIR("Hidden Pair"),
+    NAKED_TRIPLE("Naked Triple"),
+    HIDDEN_TRIPLE("Hidden Triple"),
+    X_WING("X-Wing"),
+    SWORDFISH("Swordfish");
+
+    private final String name;
+
+    Technique(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /* One deduction. Either a value that has to go in a square, or candidates that can be crossed off
+   * some squares. */
+  public static class Step {
+    private final Technique technique;
+    private final int cell; // Square the value goes in, or -1 for eliminations
+    private final int value;
+    private final SquareSet eliminated; // Squares that lose candidates
+    private final long eliminatedMask; // The candidates they lose
+    private final SquareSet pattern; // Squares that make the step work, for showing it
+
+    Step(Technique technique, int cell, int value, SquareSet eliminated, long eliminatedMask, SquareSet pattern) {
+      this.technique = technique;
+      this.cell = cell;
+      this.value = value;
+      this.eliminated = eliminated;
+      this.eliminatedMask = eliminatedMask;
+      this.pattern = pattern;
+    }
+
+    public Technique getTechnique() {
+      return technique;
+    }
+
+    public boolean isPlacement() {
+      return cell >= 0;
+    }
+
+    /* Row of the square the value goes in, if this is a placement */
+    public int getRow() {
+      return pattern.rowOf(cell);
+    }
+
+    /* Column of the square the value goes in, if this is a placement */
+    public int getCol() {
+      return pattern.colOf(cell);
+    }
+
+    /* The value that goes in, if this is a placement */
+    public int getValue() {
+      return value;
+    }
+
+    public SquareSet getEliminated() {
+      return eliminated;
+    }
+
+    /* Mask of the candidates taken off every square in getEliminated (bit val-1 for val) */
+    public long getEliminatedMask() {
+      return eliminatedMask;
+    }
+
+    public SquareSet getPattern() {
+      return pattern;
+    }
+
+    @Override
+    public String toString() {
+      if(isPlacement())
+        return technique + ": (" + getRow() + ", " + getCol() + ") is " + value;
+      StringBuilder sb = new StringBuilder(technique + ": remove");
+      for(long mask = eliminatedMask; mask != 0; mask &= mask - 1)
+        sb.append(' ').append(Long.numberOfTrailingZeros(mask) + 1);
+      return sb.append(" from ").append(eliminated).toString();
+    }
+  }
+
+  /* Checks one combination found by findSubset */
+  private interface SubsetCheck {
+    Step check(long chosen, long union);
+  }
+
+  private final Sudoku sudoku;
+
+  private int n; // Width of the board
+  private int cellCount;
+  private long all; // Mask of every value
+  private int[][] units; // Cells of every row, then every column, then every box
+  private int[][] unitsOf; // Row, column and box unit of every cell
+
+  private int[] values;
+  private long[] cand; // Candidates left for every empty cell
+  private boolean broken; // The board can't be solved from here
+
+  // Cells that got down to one candidate. A cell can only get there once, so this never wraps.
+  private int[] singles;
+  private int singlesHead;
+  private int singlesTail;
+
+  // Techniques with a lower ordinal are known to find nothing in the unit (or for the value)
+  private int[] unitLevel;
+  private int[] fishLevel;
+
+  // Scratch space for the subset searches
+  private long[] items;
+  private int[] itemIndex;
+
+  // Squares the board has changed since the last sync, from the change listener. cleared means
+  // the whole board was, so the engine has to start over.
+  private SquareSet changed;
+  private boolean cleared;
+
+  public DeductionEngine(Sudoku sudoku) {
+    this.sudoku = sudoku;
+    resize(sudoku.getBoxSize());
+    reset();
+    sudoku.addChangeListener(new Sudoku.ChangeListener() {
+      @Override
+      public void squareChanged(int row, int col) {
+        if(row < n && col < n)
+          changed.add(row, col);
+        else
+          cleared = true; // The board got bigger
+      }
+
+      @Override
+      public void boardCleared() {
+        cleared = true;
+      }
+    });
+  }
+
+  private void resize(int boxSize) {
+    n = boxSize * boxSize;
+    cellCount = n * n;
+    all = Sudoku.allValuesMask(n);
+    units = new int[n * 3][n];
+    unitsOf = new int[cellCount][3];
+    for(int i = 0; i < n; ++i) {
+      for(int j = 0; j < n; ++j) {
+        units[i][j] = i * n + j;
+        units[n + i][j] = j * n + i;
+        units[n * 2 + i][j] = (i / boxSize * boxSize + j / boxSize) * n + i % boxSize * boxSize + j % boxSize;
+      }
+    }
+    for(int u = 0; u < units.length; ++u)
+      for(int cell : units[u])
+        unitsOf[cell][u / n] = u;
+    values = new int[cellCount];
+    cand = new long[cellCount];
+    singles = new int[cellCount];
+    unitLevel = new int[units.length];
+    fishLevel = new int[n];
+    items = new long[n];
+    itemIndex = new int[n];
+    changed = new SquareSet(n);
+  }
+
+  /* Throws away everything deduced so far and starts again from the board */
+  public void reset() {
+    if(sudoku.getSize() != n)
+      resize(sudoku.getBoxSize());
+    broken = sudoku.getConflictCount() > 0;
+    singlesHead = 0;
+    singlesTail = 0;
+    for(int cell = 0; cell < cellCount; ++cell) {
+      values[cell] = sudoku.get(cell / n, cell % n);
+      cand[cell] = values[cell] == 0 ? sudoku.getLegalValuesMask(cell / n, cell % n) : 0;
+      if(values[cell] == 0 && cand[cell] == 0)
+        broken = true;
+      if(Long.bitCount(cand[cell]) == 1)
+        singles[singlesTail++] = cell;
+    }
+    Arrays.fill(unitLevel, 0);
+    Arrays.fill(fishLevel, 0);
+    changed.clear();
+    cleared = false;
+  }
+
+  /* Catches up with values that were filled in on the board since the last call */
+  private void sync() {
+    if(cleared || sudoku.getSize() != n) {
+      reset();
+      return;
+    }
+    for(int cell = changed.first(); cell >= 0; cell = changed.next(cell + 1)) {
+      int val = sudoku.get(cell / n, cell % n);
+      if(val == values[cell])
+        continue;
+      if(values[cell] != 0 || (cand[cell] & Sudoku.maskOf(val)) == 0) {
+        reset(); // Taken back, changed, or something we had ruled out
+        return;
+      }
+      place(cell, val);
+    }
+    changed.clear();
+  }
+
+  /* The next (easiest) step, or null if there isn't one this engine can find, or the board is
+   * already broken. Calling it again without applying the step gives the same step. */
+  public Step nextStep() {
+    if(!Metrics.ENABLED)
+      return findStep();
+    long start = System.nanoTime();
+    Step step = findStep();
+    Metrics.HINT.record(System.nanoTime() - start);
+    return step;
+  }
+
+  private Step findStep() {
+    sync();
+    Step step = null;
+    for(Technique t : Technique.values()) {
+      if(broken)
+        return null;
+      switch(t) {
+      case NAKED_SINGLE: step = nakedSingle(); break;
+      case X_WING: step = fish(t, 2); break;
+      case SWORDFISH: step = fish(t, 3); break;
+      default: step = unitStep(t); break;
+      }
+      if(step != null)
+        return step;
+    }
+    return null;
+  }
+
+  /* Applies a step from nextStep. Placements are written to the board too; eliminations only
+   * change the candidates the engine keeps. */
+  public void apply(Step step) {
+    sync();
+    if(step.isPlacement()) {
+      sudoku.force(step.getRow(), step.getCol(), step.getValue());
+      place(step.cell, step.value);
+      return;
+    }
+    SquareSet cells = step.getEliminated();
+    for(int i = cells.first(); i >= 0; i = cells.next(i + 1))
+      eliminate(i, step.getEliminatedMask());
+  }
+
+  /* Candidates left for a square (0 if it is filled in) */
+  public long getCandidates(int row, int col) {
+    sync();
+    return cand[row * n + col];
+  }
+
+  private void place(int cell, int val) {
+    long old = cand[cell];
+    values[cell] = val;
+    cand[cell] = 0;
+    changed(cell, old);
+    long bit = Sudoku.maskOf(val);
+    for(int k = 0; k < 3; ++k)
+      for(int peer : units[unitsOf[cell][k]])
+        if(values[peer] == 0)
+          eliminate(peer, bit);
+  }
+
+  private void eliminate(int cell, long mask) {
+    long removed = cand[cell] & mask;
+    if(removed == 0)
+      return;
+    cand[cell] &= ~removed;
+    changed(cell, removed);
+    int left = Long.bitCount(cand[cell]);
+    if(left == 1)
+      singles[singlesTail++] = cell;
+    else if(left == 0)
+      broken = true;
+  }
+
+  /* The candidates of cell changed, so its units and those values need looking at again */
+  private void changed(int cell, long removed) {
+    for(int k = 0; k < 3; ++k)
+      unitLevel[unitsOf[cell][k]] = 0;
+    for(; removed != 0; removed &= removed - 1)
+      fishLevel[Long.numberOfTrailingZeros(removed)] = 0;
+  }
+
+  private Step nakedSingle() {
+    for(; singlesHead < singlesTail; ++singlesHead) {
+      int cell = singles[singlesHead];
+      if(values[cell] == 0 && Long.bitCount(cand[cell]) == 1)
+        return placement(Technique.NAKED_SINGLE, cell, cand[cell], squares(cell));
+    }
+    return null;
+  }
+
+  /* Runs a technique that only looks inside one unit on every unit that changed since it last
+   * came up empty there */
+  private Step unitStep(Technique t) {
+    int level = t.ordinal();
+    for(int u = 0; u < units.length; ++u) {
+      if(unitLevel[u] > level)
+        continue;
+      Step step;
+      switch(t) {
+      case HIDDEN_SINGLE: step = hiddenSingle(u); break;
+      case LOCKED_CANDIDATES: step = lockedCandidates(u); break;
+      case NAKED_PAIR: step = nakedSubset(t, u, 2); break;
+      case HIDDEN_PAIR: step = hiddenSubset(t, u, 2); break;
+      case NAKED_TRIPLE: step = nakedSubset(t, u, 3); break;
+      default: step = hiddenSubset(t, u, 3); break;
+      }
+      if(step != null || broken)
+        return step;
+      unitLevel[u] = level + 1;
+    }
+    return null;
+  }
+
+  /* A value that only fits in one square of the unit */
+  private Step hiddenSingle(int u) {
+    long once = 0; // Values that fit in at least one square
+    long twice = 0; // Values that fit in at least two
+    long placed = 0;
+    for(int cell : units[u]) {
+      if(values[cell] != 0) {
+        placed |= Sudoku.maskOf(values[cell]);
+        continue;
+      }
+      twice |= once & cand[cell];
+      once |= cand[cell];
+    }
+    if((once | placed) != all) {
+      broken = true; // Some value has nowhere to go
+      return null;
+    }
+    long bit = Long.lowestOneBit(once & ~twice);
+    if(bit == 0)
+      return null;
+    for(int cell : units[u])
+      if((cand[cell] & bit) != 0)
+        return placement(Technique.HIDDEN_SINGLE, cell, bit, unitSquares(u, all));
+    return null;
+  }
+
+  /* A value whose squares in the unit all share another unit too, so it can't go anywhere else in
+   * that one (pointing when the unit is a box, claiming when it is a row or column) */
+  private Step lockedCandidates(int u) {
+    int kind = u / n;
+    long unitCand = 0;
+    for(int cell : units[u])
+      unitCand |= cand[cell];
+    for(; unitCand != 0; unitCand &= unitCand - 1) {
+      long bit = Long.lowestOneBit(unitCand);
+      for(int k = 0; k < 3; ++k) {
+        if(k == kind || (kind != 2 && k != 2))
+          continue; // Boxes line up with rows and columns, rows and columns only with boxes
+        int common = -1;
+        for(int cell : units[u]) {
+          if((cand[cell] & bit) == 0)
+            continue;
+          if(common == -1)
+            common = unitsOf[cell][k];
+          else if(common != unitsOf[cell][k])
+            common = -2;
+        }
+        if(common < 0)
+          continue;
+        SquareSet eliminated = new SquareSet(n);
+        for(int cell : units[common])
+          if((cand[cell] & bit) != 0 && unitsOf[cell][kind] != u)
+            eliminated.add(cell);
+        if(!eliminated.isEmpty())
+          return new Step(Technique.LOCKED_CANDIDATES, -1, 0, eliminated, bit, unitSquares(u, bit));
+      }
+    }
+    return null;
+  }
+
+  /* k squares of the unit that only have k candidates between them, so no other square in the unit
+   * can have those */
+  private Step nakedSubset(Technique t, int u, int k) {
+    int[] unit = units[u];
+    int count = 0;
+    for(int j = 0; j < n; ++j) {
+      int bits = Long.bitCount(cand[unit[j]]);
+      if(bits >= 2 && bits <= k) {
+        items[count] = cand[unit[j]];
+        itemIndex[count++] = j;
+      }
+    }
+    return findSubset(count, k, 0, 0, 0, 0, (chosen, union) -> {
+      SquareSet pattern = new SquareSet(n);
+      for(; chosen != 0; chosen &= chosen - 1)
+        pattern.add(unit[itemIndex[Long.numberOfTrailingZeros(chosen)]]);
+      SquareSet eliminated = new SquareSet(n);
+      for(int cell : unit)
+        if((cand[cell] & union) != 0 && !pattern.contains(cell))
+          eliminated.add(cell);
+      return eliminated.isEmpty() ? null : new Step(t, -1, 0, eliminated, union, pattern);
+    });
+  }
+
+  /* k values that only fit in the same k squares of the unit, so those squares can't have anything
+   * else */
+  private Step hiddenSubset(Technique t, int u, int k) {
+    int[] unit = units[u];
+    int count = 0;
+    for(int v = 0; v < n; ++v) {
+      long positions = 0;
+      for(int j = 0; j < n; ++j)
+        if((cand[unit[j]] >>> v & 1) != 0)
+          positions |= 1L << j;
+      int bits = Long.bitCount(positions);
+      if(bits >= 2 && bits <= k) {
+        items[count] = positions;
+        itemIndex[count++] = v;
+      }
+    }
+    return findSubset(count, k, 0, 0, 0, 0, (chosen, union) -> {
+      long subset = 0;
+      for(; chosen != 0; chosen &= chosen - 1)
+        subset |= 1L << itemIndex[Long.numberOfTrailingZeros(chosen)];
+      SquareSet pattern = new SquareSet(n);
+      SquareSet eliminated = new SquareSet(n);
+      for(; union != 0; union &= union - 1) {
+        int cell = unit[Long.numberOfTrailingZeros(union)];
+        pattern.add(cell);
+        if((cand[cell] & ~subset) != 0)
+          eliminated.add(cell);
+      }
+      return eliminated.isEmpty() ? null : new Step(t, -1, 0, eliminated, all & ~subset, pattern);
+    });
+  }
+
+  /* X-Wing (k = 2) and Swordfish (k = 3): k rows where a value only fits in the same k columns, so it
+   * can't go anywhere else in those columns. Same with rows and columns the other way around. */
+  private Step fish(Technique t, int k) {
+    int level = t.ordinal();
+    for(int v = 0; v < n; ++v) {
+      if(fishLevel[v] > level)
+        continue;
+      long bit = 1L << v;
+      for(int b = 0; b < 2; ++b) {
+        int base = b; // Rows, then columns
+        int cover = 1 - b;
+        int count = 0;
+        for(int line = 0; line < n; ++line) {
+          int[] unit = units[base * n + line];
+          long positions = 0;
+          for(int j = 0; j < n; ++j)
+            if((cand[unit[j]] & bit) != 0)
+              positions |= 1L << j;
+          int bits = Long.bitCount(positions);
+          if(bits >= 2 && bits <= k) {
+            items[count] = positions;
+            itemIndex[count++] = line;
+          }
+        }
+        Step step = findSubset(count, k, 0, 0, 0, 0, (chosen, union) -> {
+          long lines = 0;
+          SquareSet pattern = new SquareSet(n);
+          for(; chosen != 0; chosen &= chosen - 1) {
+            int line = itemIndex[Long.numberOfTrailingZeros(chosen)];
+            lines |= 1L << line;
+            for(int cell : units[base * n + line])
+              if((cand[cell] & bit) != 0)
+                pattern.add(cell);
+          }
+          SquareSet eliminated = new SquareSet(n);
+          for(; union != 0; union &= union - 1) {
+            for(int cell : units[cover * n + Long.numberOfTrailingZeros(union)]) {
+              if((cand[cell] & bit) != 0 && (lines >>> (unitsOf[cell][base] - base * n) & 1) == 0)
+                eliminated.add(cell);
+            }
+          }
+          return eliminated.isEmpty() ? null : new Step(t, -1, 0, eliminated, bit, pattern);
+        });
+        if(step != null)
+          return step;
+      }
+      fishLevel[v] = level + 1;
+    }
+    return null;
+  }
+
+  /* Goes through every combination of k of the first count items whose masks add up to exactly k
+   * bits, and returns the first step check makes out of one. chosen has bit i set for items[i]. */
+  private Step findSubset(int count, int k, int start, int depth, long chosen, long union, SubsetCheck check) {
+    if(depth == k)
+      return Long.bitCount(union) == k ? check.check(chosen, union) : null;
+    for(int i = start; i <= count - (k - depth); ++i) {
+      long next = union | items[i];
+      if(Long.bitCount(next) > k)
+        continue;
+      Step step = findSubset(count, k, i + 1, depth + 1, chosen | 1L << i, next, check);
+      if(step != null)
+        return step;
+    }
+    return null;
+  }
+
+  private Step placement(Technique t, int cell, long bit, SquareSet pattern) {
+    return new Step(t, cell, Long.numberOfTrailingZeros(bit) + 1, new SquareSet(n), 0, pattern);
+  }
+
+  private SquareSet squares(int cell) {
+    SquareSet set = new SquareSet(n);
+    set.add(cell);
+    return set;
+  }
+
+  /* Empty squares of the unit that have any of the given candidates */
+  private SquareSet unitSquares(int u, long mask) {
+    SquareSet set = new SquareSet(n);
+    for(int cell : units[u])
+      if((cand[cell] & mask) != 0)
+        set.add(cell);
+    return set;
+  }
+
+  /* Steps through a puzzle as far as the techniques go and prints every step.
+   * Usage: DeductionEngine [file] */
+  public static void main(String[] args) {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load(args.length > 0 ? args[0] : "easy1.txt");
+    DeductionEngine engine = new DeductionEngine(sudoku);
+    Map<Technique, Integer> used = new EnumMap<Technique, Integer>(Technique.class);
+    long start = System.nanoTime();
+    Step step;
+    while((step = engine.nextStep()) != null) {
+      System.out.println(step);
+      used.merge(step.getTechnique(), 1, Integer::sum);
+      engine.apply(step);
+    }
+    double millis = (System.nanoTime() - start) / 1e6;
+    System.out.println(sudoku);
+    System.out.println((sudoku.isSolved() ? "Solved" : "Stuck") + " in " + millis + " ms using " + used);
+  }
+}
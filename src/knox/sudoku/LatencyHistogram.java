@@ -0,0 +1,141 @@
+package knox.sudoku;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A histogram of durations in nanoseconds that any number of threads can record into without locks.
+ *
+ * Like an HDR histogram, the buckets are exact below 16 ns and then split every power of two into
+ * 16, so a bucket is never more than 1/16 (about 6%) wider than the values in it, from nanoseconds
+ * up to hours, in under 1000 counters.
+ *
+ * Like a LongAdder, the buckets are striped: there is at least one set of them per CPU, and each
+ * thread records into the set its hash picks, so threads on different CPUs mostly don't touch
+ * the same cache lines. Recording is one uncontended atomic increment plus two striped adders.
+ * Reading adds the stripes up without stopping anyone from recording, so a percentile may be off
+ * by whatever was recorded while it was being worked out. */
+public class LatencyHistogram implements Metrics.LatencyMXBean {
+  private static final int SUB_BITS = 4;
+  private static final int SUB = 1 << SUB_BITS; // Buckets per power of two
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+  // A power of two, at least the number of CPUs
+  private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for(int i = 0; i < STRIPES; ++i)
+      stripes[i] = new AtomicLongArray(BUCKETS);
+  }
+
+  public void record(long nanos) {
+    if(nanos < 0)
+      nanos = 0; // The clock went backwards
+    int h = System.identityHashCode(Thread.currentThread());
+    stripes[(h ^ h >>> 16) & (STRIPES - 1)].incrementAndGet(bucketOf(nanos));
+    count.increment();
+    total.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  static int bucketOf(long nanos) {
+    if(nanos < SUB)
+      return (int) nanos;
+    int exp = 63 - Long.numberOfLeadingZeros(nanos);
+    int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB - 1);
+    return (exp - SUB_BITS + 1) * SUB + sub;
+  }
+
+  /* Smallest value that goes in the bucket */
+  static long lowestIn(int bucket) {
+    if(bucket < SUB)
+      return bucket;
+    int exp = bucket / SUB + SUB_BITS - 1;
+    return (long) (SUB + bucket % SUB) << (exp - SUB_BITS);
+  }
+
+  /* The duration (in ns) that the given percent of the recorded ones were at or under. Gives the
+   * middle of the bucket it falls in. */
+  public long percentile(double percent) {
+    long[] snapshot = new long[BUCKETS];
+    long n = 0;
+    for(AtomicLongArray counts : stripes) {
+      for(int i = 0; i < BUCKETS; ++i) {
+        long c = counts.get(i);
+        snapshot[i] += c;
+        n += c;
+      }
+    }
+    if(n == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+    long seen = 0;
+    for(int i = 0; i < BUCKETS; ++i) {
+      seen += snapshot[i];
+      if(seen >= rank) {
+        long low = lowestIn(i);
+        long high = i + 1 < BUCKETS ? lowestIn(i + 1) : Long.MAX_VALUE;
+        return Math.min(low + (high - low) / 2, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    long n = count.sum();
+    return n == 0 ? 0 : total.sum() / 1e3 / n;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return percentile(50) / 1e3;
+  }
+
+  @Override
+  public double getP90Micros() {
+    return percentile(90) / 1e3;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return percentile(99) / 1e3;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return percentile(99.9) / 1e3;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return max.get() / 1e3;
+  }
+
+  /* Forgets everything recorded so far. Anything recorded at the same time may or may not stay. */
+  @Override
+  public void reset() {
+    for(AtomicLongArray counts : stripes) {
+      for(int i = 0; i < BUCKETS; ++i)
+        counts.set(i, 0);
+    }
+    count.reset();
+    total.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", getCount(), getMeanMicros(),
+        getP50Micros(), getP99Micros(), getMaxMicros());
+  }
+}
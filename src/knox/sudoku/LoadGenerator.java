@@ -0,0 +1,152 @@
+package knox.sudoku;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Hammers a SudokuServer with requests from a number of client threads for a while, then prints the
+ * requests per second and the latency percentiles. Every client sends one request at a time, so
+ * the number of clients is the number of requests in flight. Only requests that got a 200 count
+ * towards the rate and the percentiles; the ones the server turned away (a 503 or 413) and the
+ * ones that failed are counted on their own, so an overloaded server doesn't look faster for
+ * turning requests away quickly.
+ *
+ * The puzzles come from PuzzleGenerator, so the run doesn't need any files. Without -url it starts a
+ * server of its own on a free port, which is the easy way to measure everything on one box.
+ *
+ * Usage: LoadGenerator [-url http://localhost:8080] [-endpoint solve|validate|count|hint]
+ *                      [-clients n] [-seconds s] [-batch puzzles per request] [-clues k] */
+public class LoadGenerator {
+  private static final int PUZZLE_COUNT = 1000; // Different puzzles the requests cycle through
+  private static final int MAX_SAMPLES = 1 << 20; // Latencies kept per client
+
+  public static void main(String[] args) throws Exception {
+    String url = null;
+    String endpoint = "solve";
+    int clients = Runtime.getRuntime().availableProcessors() * 4;
+    int seconds = 10;
+    int batch = 1;
+    int clues = PuzzleGenerator.Difficulty.HARD.clues;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      switch(args[i]) {
+      case "-url": url = args[i + 1]; break;
+      case "-endpoint": endpoint = args[i + 1]; break;
+      case "-clients": clients = Integer.parseInt(args[i + 1]); break;
+      case "-seconds": seconds = Integer.parseInt(args[i + 1]); break;
+      case "-batch": batch = Integer.parseInt(args[i + 1]); break;
+      case "-clues": clues = Integer.parseInt(args[i + 1]); break;
+      default:
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    SudokuServer server = null;
+    if(url == null) {
+      SudokuServer.disableNagle();
+      server = new SudokuServer(0, SudokuServer.DEFAULT_MAX_REQUESTS);
+      server.start();
+      url = "http://localhost:" + server.getPort();
+    }
+    URI uri = URI.create(url + "/" + endpoint);
+    String[] bodies = makeBodies(batch, clues);
+    System.err.printf("%d clients sending %d puzzle(s) per request to %s for %d s%n", clients, batch, uri, seconds);
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    long began = System.nanoTime();
+    long end = began + seconds * 1_000_000_000L;
+    long[][] samples = new long[clients][];
+    int[] sampleCounts = new int[clients];
+    AtomicLong succeeded = new AtomicLong();
+    AtomicLong rejected = new AtomicLong();
+    AtomicLong errors = new AtomicLong();
+    Thread[] threads = new Thread[clients];
+    for(int t = 0; t < clients; ++t) {
+      int id = t;
+      samples[t] = new long[1024];
+      threads[t] = new Thread(() -> {
+        int next = id;
+        while(System.nanoTime() < end) {
+          HttpRequest request = HttpRequest.newBuilder(uri)
+              .POST(HttpRequest.BodyPublishers.ofString(bodies[next++ % bodies.length])).build();
+          long start = System.nanoTime();
+          try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if(response.statusCode() != 200) {
+              rejected.incrementAndGet();
+              continue;
+            }
+          } catch(IOException e) {
+            errors.incrementAndGet();
+            continue;
+          } catch(InterruptedException e) {
+            return;
+          }
+          long latency = System.nanoTime() - start;
+          succeeded.incrementAndGet();
+          int count = sampleCounts[id];
+          if(count == samples[id].length && count < MAX_SAMPLES)
+            samples[id] = Arrays.copyOf(samples[id], count * 2);
+          if(count < samples[id].length) {
+            samples[id][count] = latency;
+            sampleCounts[id] = count + 1;
+          }
+        }
+      }, "load-" + t);
+      threads[t].start();
+    }
+    for(Thread thread : threads)
+      thread.join();
+    double elapsed = (System.nanoTime() - began) / 1e9;
+
+    int total = 0;
+    for(int count : sampleCounts)
+      total += count;
+    long[] latencies = new long[total];
+    for(int t = 0, at = 0; t < clients; at += sampleCounts[t++])
+      System.arraycopy(samples[t], 0, latencies, at, sampleCounts[t]);
+    Arrays.sort(latencies);
+
+    long ok = succeeded.get();
+    System.out.printf("%d requests in %.1f s: %.0f requests/s, %.0f puzzles/s (not counting %d rejected and %d failed)%n",
+        ok, elapsed, ok / elapsed, ok * (double) batch / elapsed, rejected.get(), errors.get());
+    System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n", percentile(latencies, 50),
+        percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 99.9), percentile(latencies, 100));
+    if(server != null)
+      server.stop(0);
+  }
+
+  /* Request bodies of batch puzzles each, cycling through PUZZLE_COUNT generated puzzles */
+  private static String[] makeBodies(int batch, int clues) {
+    PuzzleGenerator generator = new PuzzleGenerator(42);
+    int[] puzzle = new int[81];
+    String[] puzzles = new String[PUZZLE_COUNT];
+    StringBuilder sb = new StringBuilder(82);
+    for(int p = 0; p < PUZZLE_COUNT; ++p) {
+      generator.generate(clues, puzzle);
+      sb.setLength(0);
+      for(int val : puzzle)
+        sb.append(val == 0 ? '.' : (char) ('0' + val));
+      puzzles[p] = sb.append('\n').toString();
+    }
+    String[] bodies = new String[Math.max(1, PUZZLE_COUNT / batch)];
+    for(int b = 0; b < bodies.length; ++b) {
+      sb.setLength(0);
+      for(int p = 0; p < batch; ++p)
+        sb.append(puzzles[(b * batch + p) % PUZZLE_COUNT]);
+      bodies[b] = sb.toString();
+    }
+    return bodies;
+  }
+
+  /* The latency (in ms) that the given percent of requests were at or under */
+  private static double percentile(long[] sorted, double percent) {
+    if(sorted.length == 0)
+      return 0;
+    int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+  }
+}
@@ -0,0 +1,104 @@
+package knox.sudoku;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* Counts what the model and the solvers do, and how long solves, hints and loads take, and
+ * publishes it all over JMX (look under knox.sudoku in JConsole or VisualVM).
+ *
+ * It is off unless the JVM is started with -Dknox.sudoku.metrics=true. ENABLED is a constant, so
+ * when it is off the JIT throws away every "if(Metrics.ENABLED)" hook and they cost nothing. When it
+ * is on, counting is a LongAdder increment (striped across cells, so threads don't all fight over
+ * one counter) and timing is two nanoTime calls and a LatencyHistogram record, none of which lock.
+ *
+ * MBeans:
+ *   knox.sudoku:type=Counters                     calls to the model, and solver work
+ *   knox.sudoku:type=Latency,name=solve|hint|load  LatencyHistograms */
+public final class Metrics {
+  public static final boolean ENABLED = Boolean.getBoolean("knox.sudoku.metrics");
+
+  // Calls to the model
+  public static final LongAdder SET_CALLS = new LongAdder();
+  public static final LongAdder FORCE_CALLS = new LongAdder(); // Not counting loads, see LOAD
+  public static final LongAdder IS_LEGAL_CALLS = new LongAdder();
+  public static final LongAdder LEGAL_VALUES_CALLS = new LongAdder();
+
+  // Work done by the solvers, added up once per solve
+  public static final LongAdder SOLVER_NODES = new LongAdder();
+  public static final LongAdder SOLVER_BACKTRACKS = new LongAdder();
+  public static final LongAdder PROPAGATIONS = new LongAdder(); // Values filled in without branching
+
+  public static final LatencyHistogram SOLVE = new LatencyHistogram(); // Every solve or count by a solver
+  public static final LatencyHistogram HINT = new LatencyHistogram(); // Every DeductionEngine.nextStep
+  public static final LatencyHistogram LOAD = new LatencyHistogram(); // Every board loaded into a Sudoku
+
+  public interface CountersMXBean {
+    long getSetCalls();
+    long getForceCalls();
+    long getIsLegalCalls();
+    long getLegalValuesCalls();
+    long getSolverNodes();
+    long getSolverBacktracks();
+    long getPropagations();
+    void reset();
+  }
+
+  /* What a LatencyHistogram shows over JMX. Times are in microseconds. */
+  public interface LatencyMXBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP90Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+    void reset();
+  }
+
+  private static class Counters implements CountersMXBean {
+    @Override public long getSetCalls() { return SET_CALLS.sum(); }
+    @Override public long getForceCalls() { return FORCE_CALLS.sum(); }
+    @Override public long getIsLegalCalls() { return IS_LEGAL_CALLS.sum(); }
+    @Override public long getLegalValuesCalls() { return LEGAL_VALUES_CALLS.sum(); }
+    @Override public long getSolverNodes() { return SOLVER_NODES.sum(); }
+    @Override public long getSolverBacktracks() { return SOLVER_BACKTRACKS.sum(); }
+    @Override public long getPropagations() { return PROPAGATIONS.sum(); }
+
+    @Override
+    public void reset() {
+      for(LongAdder adder : new LongAdder[] { SET_CALLS, FORCE_CALLS, IS_LEGAL_CALLS, LEGAL_VALUES_CALLS,
+          SOLVER_NODES, SOLVER_BACKTRACKS, PROPAGATIONS })
+        adder.reset();
+    }
+  }
+
+  static {
+    if(ENABLED) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        server.registerMBean(new Counters(), new ObjectName("knox.sudoku:type=Counters"));
+        server.registerMBean(SOLVE, new ObjectName("knox.sudoku:type=Latency,name=solve"));
+        server.registerMBean(HINT, new ObjectName("knox.sudoku:type=Latency,name=hint"));
+        server.registerMBean(LOAD, new ObjectName("knox.sudoku:type=Latency,name=load"));
+      } catch(JMException e) {
+        // Already there (another class loader got here first) or JMX is locked down. The numbers
+        // are still kept, there is just nowhere to see them.
+        System.err.println("Couldn't publish the sudoku metrics over JMX: " + e);
+      }
+    }
+  }
+
+  private Metrics() {}
+
+  /* Records one solve by a solver that has just finished */
+  static void solved(long startNanos, long nodes, long backtracks, long propagations) {
+    SOLVE.record(System.nanoTime() - startNanos);
+    SOLVER_NODES.add(nodes);
+    SOLVER_BACKTRACKS.add(backtracks);
+    PROPAGATIONS.add(propagations);
+  }
+}
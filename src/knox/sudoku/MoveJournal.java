@@ -0,0 +1,192 @@
+package knox.sudoku;
+
+/* Records every change made to a Sudoku so it can be undone and redone.
+ *
+ * Make all changes through the journal instead of straight on the Sudoku. Each change is packed into
+ * one int (the square, the value it had and the value it got), so recording a move never allocates.
+ * A Super Swap changes two squares, so its second change is flagged as part of the same move and
+ * they are undone and redone together.
+ *
+ * The ints live in a ring buffer that grows as needed up to a maximum size, after which the oldest
+ * moves are forgotten. The default keeps a million changes in 4 MB. Undo and redo are O(1) per move,
+ * and jumpTo is O(distance). Making a new move after undoing throws away the moves that were undone. */
+public class MoveJournal {
+  public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+  // Layout of an entry. The value fields are 8 bits and the square 15, which covers a 64x64 board.
+  private static final int GROUP_FLAG = 1 << 31; // Same move as the entry before it
+  private static final int CELL_SHIFT = 16;
+  private static final int OLD_SHIFT = 8;
+  private static final int VALUE_MASK = 0xFF;
+  private static final int CELL_MASK = 0x7FFF;
+
+  private final Sudoku sudoku;
+  private final int maxEntries;
+
+  private int[] entries;
+  private int head = 0; // Index of the oldest entry
+  private int size = 0; // Entries recorded, including ones that were undone
+  private int cursor = 0; // Entries currently applied, so cursor..size-1 can be redone
+  private int moveCount = 0; // Same as size and cursor, but counted in moves
+  private int moveCursor = 0;
+
+  public MoveJournal(Sudoku sudoku) {
+    this(sudoku, DEFAULT_MAX_ENTRIES);
+  }
+
+  public MoveJournal(Sudoku sudoku, int maxEntries) {
+    if(maxEntries < 2) {
+      throw new IllegalArgumentException("The journal needs room for at least one swap");
+    }
+    this.sudoku = sudoku;
+    this.maxEntries = maxEntries;
+    entries = new int[Math.min(64, maxEntries)];
+  }
+
+  public Sudoku getSudoku() {
+    return sudoku;
+  }
+
+  /* Sudoku.set, recorded if the value went in. Returns the same thing. */
+  public boolean set(int row, int col, int val, SquareSet illegals) {
+    int old = sudoku.get(row, col);
+    boolean placed = sudoku.set(row, col, val, illegals);
+    if(placed)
+      record(row, col, old, val, false);
+    return placed;
+  }
+
+  /* Sudoku.force, recorded if it changed anything */
+  public void force(int row, int col, int val) {
+    int old = sudoku.get(row, col);
+    sudoku.force(row, col, val);
+    record(row, col, old, val, false);
+  }
+
+  /* Swaps the values of two squares as one move */
+  public void swap(int row1, int col1, int row2, int col2) {
+    int val1 = sudoku.get(row1, col1);
+    int val2 = sudoku.get(row2, col2);
+    if(val1 == val2)
+      return;
+    sudoku.force(row1, col1, val2);
+    sudoku.force(row2, col2, val1);
+    record(row1, col1, val1, val2, false);
+    record(row2, col2, val2, val1, true);
+  }
+
+  public boolean canUndo() {
+    return cursor > 0;
+  }
+
+  public boolean canRedo() {
+    return cursor < size;
+  }
+
+  /* Takes back the last move. Returns false if there is nothing to undo. */
+  public boolean undo() {
+    if(cursor == 0)
+      return false;
+    int entry;
+    do {
+      entry = entries[index(--cursor)];
+      sudoku.force(rowOf(entry), colOf(entry), entry >>> OLD_SHIFT & VALUE_MASK);
+    } while((entry & GROUP_FLAG) != 0 && cursor > 0);
+    --moveCursor;
+    return true;
+  }
+
+  /* Makes the last undone move again. Returns false if there is nothing to redo. */
+  public boolean redo() {
+    if(cursor == size)
+      return false;
+    do {
+      int entry = entries[index(cursor++)];
+      sudoku.force(rowOf(entry), colOf(entry), entry & VALUE_MASK);
+    } while(cursor < size && (entries[index(cursor)] & GROUP_FLAG) != 0);
+    ++moveCursor;
+    return true;
+  }
+
+  /* Undoes or redoes moves until the given number of moves are applied. 0 is the oldest state the
+   * journal remembers, and getMoveCount() is the newest. */
+  public void jumpTo(int move) {
+    if(move < 0 || move > moveCount) {
+      throw new IllegalArgumentException("There is no move " + move + ", only 0 to " + moveCount);
+    }
+    while(moveCursor > move)
+      undo();
+    while(moveCursor < move)
+      redo();
+  }
+
+  /* Number of moves applied right now */
+  public int getPosition() {
+    return moveCursor;
+  }
+
+  /* Number of moves remembered, including ones that were undone */
+  public int getMoveCount() {
+    return moveCount;
+  }
+
+  /* Forgets every move, for when a new board is loaded. The board itself is left alone. */
+  public void clear() {
+    head = 0;
+    size = 0;
+    cursor = 0;
+    moveCount = 0;
+    moveCursor = 0;
+  }
+
+  private void record(int row, int col, int old, int val, boolean sameMove) {
+    if(old == val)
+      return;
+    // Anything that was undone can't be redone any more
+    size = cursor;
+    moveCount = moveCursor;
+    if(size == entries.length) {
+      if(entries.length < maxEntries)
+        grow();
+      else
+        dropOldest();
+    }
+    int cell = row * sudoku.getSize() + col;
+    entries[index(size)] = (sameMove ? GROUP_FLAG : 0) | cell << CELL_SHIFT | old << OLD_SHIFT | val;
+    cursor = ++size;
+    if(!sameMove)
+      ++moveCount;
+    moveCursor = moveCount;
+  }
+
+  private void grow() {
+    int[] bigger = new int[Math.min(entries.length * 2, maxEntries)];
+    for(int i = 0; i < size; ++i)
+      bigger[i] = entries[index(i)];
+    entries = bigger;
+    head = 0;
+  }
+
+  /* Forgets the oldest move to make room */
+  private void dropOldest() {
+    do {
+      head = (head + 1) % entries.length;
+      --size;
+    } while(size > 0 && (entries[head] & GROUP_FLAG) != 0);
+    cursor = size;
+    --moveCount;
+    moveCursor = moveCount;
+  }
+
+  private int index(int i) {
+    return (head + i) % entries.length;
+  }
+
+  private int rowOf(int entry) {
+    return (entry >>> CELL_SHIFT & CELL_MASK) / sudoku.getSize();
+  }
+
+  private int colOf(int entry) {
+    return (entry >>> CELL_SHIFT & CELL_MASK) % sudoku.getSize();
+  }
+}
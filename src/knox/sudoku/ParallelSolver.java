@@ -0,0 +1,233 @@
+package knox.sudoku;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* Solves or counts the solutions of one board by splitting the search tree across a ForkJoinPool.
+ *
+ * The top of the tree is split on the most constrained empty square (one subtask per legal value),
+ * and that keeps going until the subtrees are small enough or deep enough to not be worth splitting.
+ * Each of those is searched by a BitboardSolver that belongs to the worker thread. Idle workers
+ * steal subtrees from busy ones.
+ *
+ * When counting, every subtree is searched to the end and the counts are added back up on the way
+ * out. When solving, the first subtree to find a solution sets a shared flag, and every other
+ * solver sees it within a few microseconds and quits, so one hard puzzle gets all the cores.
+ *
+ * It is safe to use one ParallelSolver from several threads at once. */
+public class ParallelSolver {
+  private static final int DEFAULT_SPLIT_DEPTH = 4;
+
+  private final ForkJoinPool pool;
+  private final int boxSize;
+  private final int n; // Width of the board
+  private final int cellCount;
+  private final long all; // Mask of every value
+  private final int splitDepth;
+  // Subtrees with at least this many empty squares (55 on a 9x9 board) are split no matter how deep
+  // they are, since they can have more solutions than one solver can count
+  private final int alwaysSplitEmpties;
+  private final ThreadLocal<BitboardSolver> solvers;
+
+  /* Counts solutions of 9x9 boards on the common pool */
+  public ParallelSolver() {
+    this(3);
+  }
+
+  /* Counts solutions of boards made of boxSize x boxSize boxes on the common pool */
+  public ParallelSolver(int boxSize) {
+    this(ForkJoinPool.commonPool(), boxSize, DEFAULT_SPLIT_DEPTH);
+  }
+
+  public ParallelSolver(ForkJoinPool pool, int splitDepth) {
+    this(pool, 3, splitDepth);
+  }
+
+  public ParallelSolver(ForkJoinPool pool, int boxSize, int splitDepth) {
+    this.pool = pool;
+    this.boxSize = boxSize;
+    this.n = boxSize * boxSize;
+    this.cellCount = n * n;
+    this.all = Sudoku.allValuesMask(n);
+    this.splitDepth = splitDepth;
+    this.alwaysSplitEmpties = cellCount * 55 / 81;
+    this.solvers = ThreadLocal.withInitial(() -> new BitboardSolver(boxSize));
+  }
+
+  /* Counts all the solutions of the board (n*n values in row-major order, 0 for blanks). This goes all
+   * the way to the end, so don't call it on a nearly empty board; use a capped count instead. */
+  public long countSolutions(int[] cells) {
+    if(cells.length != cellCount) {
+      throw new IllegalArgumentException("Expected " + cellCount + " cells but got " + cells.length);
+    }
+    return pool.invoke(new CountTask(cells.clone(), 0));
+  }
+
+  /* Solves the board (n*n values in row-major order, 0 for blanks), filling in the blanks of cells.
+   * Returns false, leaving cells alone, if it has no solution. If it has more than one, any of them
+   * may be the one that is found. */
+  public boolean solve(int[] cells) {
+    if(cells.length != cellCount) {
+      throw new IllegalArgumentException("Expected " + cellCount + " cells but got " + cells.length);
+    }
+    AtomicReference<int[]> solution = new AtomicReference<int[]>();
+    pool.invoke(new SolveTask(cells.clone(), 0, new AtomicBoolean(), solution));
+    if(solution.get() == null)
+      return false;
+    System.arraycopy(solution.get(), 0, cells, 0, cellCount);
+    return true;
+  }
+
+  /* Where to split a board: its most constrained empty square and the values that can go there */
+  private static class Split {
+    int empties; // Number of empty squares
+    int cell = -1; // -1 if the board is already broken
+    long values;
+  }
+
+  private Split split(int[] cells) {
+    Split split = new Split();
+    long[] rowUsed = new long[n];
+    long[] colUsed = new long[n];
+    long[] boxUsed = new long[n];
+    for(int i = 0; i < cellCount; ++i) {
+      int val = cells[i];
+      if(val == 0) {
+        ++split.empties;
+        continue;
+      }
+      if(val < 0 || val > n)
+        return split;
+      int r = i / n;
+      int c = i % n;
+      int b = getBox(r, c);
+      long bit = Sudoku.maskOf(val);
+      if(((rowUsed[r] | colUsed[c] | boxUsed[b]) & bit) != 0)
+        return split; // Already broken
+      rowUsed[r] |= bit;
+      colUsed[c] |= bit;
+      boxUsed[b] |= bit;
+    }
+
+    for(int i = 0; i < cellCount; ++i) {
+      if(cells[i] != 0)
+        continue;
+      int r = i / n;
+      int c = i % n;
+      long mask = ~(rowUsed[r] | colUsed[c] | boxUsed[getBox(r, c)]) & all;
+      if(split.cell < 0 || Long.bitCount(mask) < Long.bitCount(split.values)) {
+        split.cell = i;
+        split.values = mask;
+      }
+    }
+    return split;
+  }
+
+  /* One child board for every value of the split */
+  private static int[][] children(int[] cells, Split split) {
+    int[][] children = new int[Long.bitCount(split.values)][];
+    long mask = split.values;
+    for(int t = 0; mask != 0; mask &= mask - 1) {
+      children[t] = cells.clone();
+      children[t++][split.cell] = Long.numberOfTrailingZeros(mask) + 1;
+    }
+    return children;
+  }
+
+  private int getBox(int row, int col) {
+    return row / boxSize * boxSize + col / boxSize;
+  }
+
+  /* Counts the solutions under one board. Owns its cells. */
+  private class CountTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+    private final int[] cells;
+    private final int depth;
+
+    CountTask(int[] cells, int depth) {
+      this.cells = cells;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Long compute() {
+      Split split = split(cells);
+      if(split.empties == 0)
+        return split.cell < 0 && isValid() ? 1L : 0L;
+      if(split.cell < 0 || split.values == 0)
+        return 0L;
+
+      if(depth >= splitDepth && split.empties < alwaysSplitEmpties)
+        return solvers.get().countSolutions(cells, Long.MAX_VALUE);
+
+      int[][] children = children(cells, split);
+      // Only one value means there is nothing to split, so don't count it as a level
+      if(children.length == 1)
+        return new CountTask(children[0], depth).compute();
+      CountTask[] tasks = new CountTask[children.length];
+      for(int t = 0; t < tasks.length; ++t)
+        tasks[t] = new CountTask(children[t], depth + 1);
+      invokeAll(tasks);
+      long total = 0;
+      for(CountTask task : tasks)
+        total += task.join();
+      return total;
+    }
+
+    /* A full board only counts if nothing on it clashes */
+    private boolean isValid() {
+      return solvers.get().countSolutions(cells, 1) == 1;
+    }
+  }
+
+  /* Looks for a solution under one board, and stops as soon as any task has found one. Owns its
+   * cells, and they become the solution if this is the task that finds it. */
+  private class SolveTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int[] cells;
+    private final int depth;
+    private final AtomicBoolean done;
+    private final AtomicReference<int[]> solution;
+
+    SolveTask(int[] cells, int depth, AtomicBoolean done, AtomicReference<int[]> solution) {
+      this.cells = cells;
+      this.depth = depth;
+      this.done = done;
+      this.solution = solution;
+    }
+
+    @Override
+    protected void compute() {
+      if(done.get())
+        return; // Someone else already got it
+      Split split = split(cells);
+      if(split.empties > 0 && (split.cell < 0 || split.values == 0))
+        return;
+
+      if(split.empties == 0 || depth >= splitDepth) {
+        BitboardSolver solver = solvers.get();
+        solver.setCancelFlag(done);
+        try {
+          if(solver.solve(cells) && solution.compareAndSet(null, cells))
+            done.set(true);
+        } finally {
+          solver.setCancelFlag(null);
+        }
+        return;
+      }
+
+      int[][] children = children(cells, split);
+      if(children.length == 1) {
+        new SolveTask(children[0], depth, done, solution).compute();
+        return;
+      }
+      SolveTask[] tasks = new SolveTask[children.length];
+      for(int t = 0; t < tasks.length; ++t)
+        tasks[t] = new SolveTask(children[t], depth + 1, done, solution);
+      invokeAll(tasks);
+    }
+  }
+}
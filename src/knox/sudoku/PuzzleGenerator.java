@@ -0,0 +1,202 @@
+package knox.sudoku;
+
+import java.util.SplittableRandom;
+
+/* Makes new puzzles that have exactly one solution.
+ *
+ * It fills a random valid grid, then goes through the squares in a random order and takes out each
+ * clue unless doing so would give the puzzle a second solution, until it gets down to the target
+ * number of clues. With a target of 0 it keeps going through every square, which leaves a minimal
+ * puzzle (taking out any one of its clues would make it ambiguous).
+ *
+ * The same seed always gives the same puzzles. One generator keeps one solver and a few boards
+ * around for every puzzle it makes, so it isn't thread safe; give every thread its own. */
+public class PuzzleGenerator {
+  // Only makes 9x9 puzzles
+  private static final int CELLS = 81;
+  private static final int ALL_VALUES = 0x1FF;
+
+  /* How many clues to aim for. Fewer clues is usually harder. */
+  public enum Difficulty {
+    EASY(36), MEDIUM(30), HARD(25), MINIMAL(0);
+
+    public final int clues;
+
+    Difficulty(int clues) {
+      this.clues = clues;
+    }
+  }
+
+  private final SplittableRandom random;
+  private final SudokuSolver solver = new BitboardSolver();
+  private final int[] order = new int[CELLS];
+  private final int[] digits = new int[9];
+  // Values used in every row, column and box of the grid being filled, one bit per value
+  private final int[] rowUsed = new int[9];
+  private final int[] colUsed = new int[9];
+  private final int[] boxUsed = new int[9];
+
+  public PuzzleGenerator(long seed) {
+    random = new SplittableRandom(seed);
+  }
+
+  /* Makes a puzzle for the given difficulty. See generate(int, int[]). */
+  public int[] generate(Difficulty difficulty, int[] puzzle) {
+    return generate(difficulty.clues, puzzle);
+  }
+
+  /* Makes a puzzle with (about) the given number of clues and writes it into puzzle as 81 values in
+   * row-major order. If the target is too low to reach while keeping the solution unique, the
+   * puzzle will have more clues than asked for. Returns puzzle. */
+  public int[] generate(int targetClues, int[] puzzle) {
+    fillGrid(puzzle);
+
+    for(int i = 0; i < CELLS; ++i)
+      order[i] = i;
+    shuffle(order, CELLS);
+
+    int clues = CELLS;
+    for(int i = 0; i < CELLS && clues > targetClues; ++i) {
+      int cell = order[i];
+      int val = puzzle[cell];
+      if(hasOtherSolution(puzzle, cell, val)) {
+        continue; // It needs that clue
+      }
+      puzzle[cell] = 0;
+      --clues;
+    }
+    return puzzle;
+  }
+
+  /* Checks if the puzzle would have a second solution with the clue at cell taken out. We already
+   * know the one with val there, so it is enough to look for a solution with anything else there
+   * that the other clues allow. Each of those searches stops at the first solution it finds.
+   * puzzle is left the way it was. */
+  private boolean hasOtherSolution(int[] puzzle, int cell, int val) {
+    int row = cell / 9;
+    int col = cell % 9;
+    int cr = row - row % 3;
+    int cc = col - col % 3;
+    int used = 0;
+    for(int i = 0; i < 9; ++i) {
+      used |= bitOf(puzzle[row * 9 + i]) | bitOf(puzzle[i * 9 + col]) | bitOf(puzzle[(cr + i / 3) * 9 + cc + i % 3]);
+    }
+    int others = ~used & ALL_VALUES; // Its own value is in used too
+
+    boolean found = false;
+    for(; others != 0 && !found; others &= others - 1) {
+      puzzle[cell] = Integer.numberOfTrailingZeros(others) + 1;
+      found = solver.countSolutions(puzzle, 1) > 0;
+    }
+    puzzle[cell] = val;
+    return found;
+  }
+
+  private static int bitOf(int val) {
+    return val == 0 ? 0 : 1 << (val - 1);
+  }
+
+  /* Same as generate(Difficulty, int[]), loaded into a new Sudoku */
+  public Sudoku generate(Difficulty difficulty) {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load(generate(difficulty, new int[CELLS]));
+    return sudoku;
+  }
+
+  /* Fills grid with a random solved board. The three boxes on the diagonal don't share any rows or
+   * columns, so they can each be filled with a random order of 1-9. The rest is filled by a search
+   * that tries the values each square allows in a random order, so no seed ends up with the same
+   * values off the diagonal the way a solver's first solution would. */
+  private void fillGrid(int[] grid) {
+    for(int i = 0; i < CELLS; ++i)
+      grid[i] = 0;
+    for(int i = 0; i < 9; ++i)
+      rowUsed[i] = colUsed[i] = boxUsed[i] = 0;
+    for(int box = 0; box < 3; ++box) {
+      for(int i = 0; i < 9; ++i)
+        digits[i] = i + 1;
+      shuffle(digits, 9);
+      for(int i = 0; i < 9; ++i)
+        place(grid, (box * 3 + i / 3) * 9 + box * 3 + i % 3, digits[i]);
+    }
+    fillFrom(grid, 0); // Always works, any diagonal boxes can be completed
+  }
+
+  /* Fills the empty squares from cell on. Returns false, leaving them empty, if they can't be. */
+  private boolean fillFrom(int[] grid, int cell) {
+    while(cell < CELLS && grid[cell] != 0)
+      ++cell;
+    if(cell == CELLS)
+      return true;
+    int row = cell / 9;
+    int col = cell % 9;
+    int box = row / 3 * 3 + col / 3;
+    int allowed = ~(rowUsed[row] | colUsed[col] | boxUsed[box]) & ALL_VALUES;
+    while(allowed != 0) {
+      // Take a random one of the values that are left
+      int bit = allowed;
+      for(int k = random.nextInt(Integer.bitCount(allowed)); k > 0; --k)
+        bit &= bit - 1;
+      bit &= -bit;
+      allowed &= ~bit;
+      place(grid, cell, Integer.numberOfTrailingZeros(bit) + 1);
+      if(fillFrom(grid, cell + 1))
+        return true;
+      rowUsed[row] &= ~bit;
+      colUsed[col] &= ~bit;
+      boxUsed[box] &= ~bit;
+      grid[cell] = 0;
+    }
+    return false;
+  }
+
+  private void place(int[] grid, int cell, int val) {
+    int row = cell / 9;
+    int col = cell % 9;
+    grid[cell] = val;
+    rowUsed[row] |= bitOf(val);
+    colUsed[col] |= bitOf(val);
+    boxUsed[row / 3 * 3 + col / 3] |= bitOf(val);
+  }
+
+  /* Fisher-Yates shuffle of the first n values */
+  private void shuffle(int[] values, int n) {
+    for(int i = n - 1; i > 0; --i) {
+      int j = random.nextInt(i + 1);
+      int temp = values[i];
+      values[i] = values[j];
+      values[j] = temp;
+    }
+  }
+
+  /* Prints puzzles, one per line. Usage: PuzzleGenerator [-count n] [-seed s] [-clues k | -difficulty d] */
+  public static void main(String[] args) {
+    int count = 1;
+    long seed = System.nanoTime();
+    int clues = Difficulty.MEDIUM.clues;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      switch(args[i]) {
+      case "-count": count = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      case "-clues": clues = Integer.parseInt(args[i + 1]); break;
+      case "-difficulty": clues = Difficulty.valueOf(args[i + 1].toUpperCase()).clues; break;
+      default:
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    PuzzleGenerator generator = new PuzzleGenerator(seed);
+    int[] puzzle = new int[CELLS];
+    StringBuilder sb = new StringBuilder(CELLS + 1);
+    long start = System.nanoTime();
+    for(int n = 0; n < count; ++n) {
+      generator.generate(clues, puzzle);
+      sb.setLength(0);
+      for(int val : puzzle)
+        sb.append(val == 0 ? '.' : (char) ('0' + val));
+      System.out.println(sb);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.printf("%d puzzles in %.3f s: %.0f puzzles/s%n", count, seconds, count / seconds);
+  }
+}
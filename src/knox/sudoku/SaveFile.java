@@ -0,0 +1,241 @@
+package knox.sudoku;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* A saved game: the board, which squares were given, and a few numbers about the game.
+ *
+ * Saves are binary, and small (59 bytes for a 9x9 board, plus a few for each metadata entry):
+ *   magic "SDKU", version, box size                       6 bytes
+ *   cells, ceil(log2(size+1)) bits each, packed           41 bytes for 9x9 (4 bits each)
+ *   given mask, one bit per square                        11 bytes for 9x9
+ *   number of metadata entries, then for each one a
+ *   tag byte, a length byte and a big-endian value
+ * Cells and given bits are packed starting from the low bit of each byte, in row-major order.
+ * Readers skip metadata tags they don't know, so new ones can be added without a new version.
+ *
+ * Reading takes one read of the whole file, then works out of the buffer. Text saves (like the
+ * ones toSaveString makes, with an optional "EXT:swaps:2" line after the board) still load; every
+ * value in them counts as given. */
+public class SaveFile {
+  private static final byte[] MAGIC = { 'S', 'D', 'K', 'U' };
+  private static final int VERSION = 1;
+  private static final int MAX_METADATA = 255; // The count is one byte
+
+  // Metadata tags
+  public static final int SWAPS_REMAINING = 1;
+  public static final int ELAPSED_MILLIS = 2;
+
+  private final int[] cells;
+  private final SquareSet givens;
+  private final Map<Integer, Long> metadata = new TreeMap<Integer, Long>();
+
+  /* A save of the sudoku as it is now */
+  public SaveFile(Sudoku sudoku) {
+    cells = sudoku.copyTo(new int[sudoku.getSize() * sudoku.getSize()]);
+    givens = sudoku.getGivens(sudoku.newSquareSet());
+  }
+
+  private SaveFile(int[] cells, SquareSet givens) {
+    this.cells = cells;
+    this.givens = givens;
+  }
+
+  /* Puts the saved board (and its givens) into the sudoku */
+  public void applyTo(Sudoku sudoku) {
+    sudoku.load(cells, givens);
+  }
+
+  public long get(int tag, long defaultValue) {
+    Long value = metadata.get(tag);
+    return value == null ? defaultValue : value;
+  }
+
+  public SaveFile set(int tag, long value) {
+    if(tag < 0 || tag > 255) {
+      throw new IllegalArgumentException("Metadata tags have to fit in a byte");
+    }
+    if(metadata.size() >= MAX_METADATA && !metadata.containsKey(tag)) {
+      throw new IllegalArgumentException("A save can't have more than " + MAX_METADATA + " metadata entries");
+    }
+    metadata.put(tag, value);
+    return this;
+  }
+
+  /* Number of bits each cell takes on a board this wide */
+  private static int bitsPerCell(int size) {
+    return 32 - Integer.numberOfLeadingZeros(size);
+  }
+
+  public void write(String filename) {
+    if(metadata.size() > MAX_METADATA) {
+      throw new IllegalArgumentException("A save can't have more than " + MAX_METADATA + " metadata entries");
+    }
+    int size = givens.getSize();
+    int squares = size * size;
+    int bits = bitsPerCell(size);
+    ByteBuffer buf = ByteBuffer.allocate(6 + (squares * bits + 7) / 8 + (squares + 7) / 8 + 1 + metadata.size() * 10);
+    buf.put(MAGIC).put((byte) VERSION).put((byte) (int) Math.round(Math.sqrt(size)));
+
+    byte[] packed = new byte[(squares * bits + 7) / 8];
+    for(int i = 0; i < squares; ++i)
+      for(int b = 0; b < bits; ++b)
+        if((cells[i] >>> b & 1) != 0)
+          packed[(i * bits + b) >>> 3] |= 1 << ((i * bits + b) & 7);
+    buf.put(packed);
+
+    byte[] given = new byte[(squares + 7) / 8];
+    for(int i = givens.first(); i >= 0; i = givens.next(i + 1))
+      given[i >>> 3] |= 1 << (i & 7);
+    buf.put(given);
+
+    buf.put((byte) metadata.size());
+    for(Map.Entry<Integer, Long> entry : metadata.entrySet()) {
+      long value = entry.getValue();
+      // Only as many bytes as the value needs
+      int length = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 7) / 8);
+      buf.put((byte) (int) entry.getKey()).put((byte) length);
+      for(int b = length - 1; b >= 0; --b)
+        buf.put((byte) (value >>> (b * 8)));
+    }
+
+    buf.flip();
+    try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while(buf.hasRemaining())
+        channel.write(buf);
+    } catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /* Reads a binary save, or a text one if the file doesn't start with the magic */
+  public static SaveFile read(String filename) {
+    ByteBuffer buf;
+    try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      buf = ByteBuffer.allocate((int) channel.size());
+      while(buf.hasRemaining() && channel.read(buf) >= 0);
+    } catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+    buf.flip();
+    try {
+      return isBinary(buf) ? readBinary(buf, filename) : readText(buf, filename);
+    } catch(BufferUnderflowException e) {
+      throw new IllegalArgumentException(filename + " ends in the middle of a save");
+    }
+  }
+
+  private static boolean isBinary(ByteBuffer buf) {
+    if(buf.remaining() < MAGIC.length)
+      return false;
+    for(int i = 0; i < MAGIC.length; ++i)
+      if(buf.get(i) != MAGIC[i])
+        return false;
+    return true;
+  }
+
+  private static SaveFile readBinary(ByteBuffer buf, String filename) {
+    buf.position(MAGIC.length);
+    int version = buf.get() & 0xFF;
+    if(version > VERSION) {
+      throw new IllegalArgumentException(filename + " is a version " + version + " save, which is newer than this game");
+    }
+    if(version != VERSION) {
+      throw new IllegalArgumentException(filename + " has an unknown save version " + version + ", so it may be corrupt");
+    }
+    int boxSize = buf.get() & 0xFF;
+    if(boxSize < 1 || boxSize > Sudoku.MAX_BOX_SIZE) {
+      throw new IllegalArgumentException(filename + " has " + boxSize + "x" + boxSize + " boxes");
+    }
+    int size = boxSize * boxSize;
+    int squares = size * size;
+    int bits = bitsPerCell(size);
+
+    int[] cells = new int[squares];
+    byte[] packed = new byte[(squares * bits + 7) / 8];
+    buf.get(packed);
+    for(int i = 0; i < squares; ++i)
+      for(int b = 0; b < bits; ++b)
+        cells[i] |= (packed[(i * bits + b) >>> 3] >>> ((i * bits + b) & 7) & 1) << b;
+
+    SquareSet givens = new SquareSet(size);
+    byte[] given = new byte[(squares + 7) / 8];
+    buf.get(given);
+    for(int i = 0; i < squares; ++i)
+      if((given[i >>> 3] >>> (i & 7) & 1) != 0)
+        givens.add(i);
+
+    SaveFile save = new SaveFile(cells, givens);
+    int entries = buf.get() & 0xFF;
+    for(int e = 0; e < entries; ++e) {
+      int tag = buf.get() & 0xFF;
+      int length = buf.get() & 0xFF;
+      long value = 0;
+      for(int b = 0; b < length; ++b)
+        value = value << 8 | (buf.get() & 0xFF);
+      save.metadata.put(tag, value);
+    }
+    return save;
+  }
+
+  /* The old text format. The size of the board comes from the number of values on its first line.
+   * Lines that don't start with a value are skipped, other than "EXT:" ones, which hold
+   * comma-separated key:value pairs. */
+  private static SaveFile readText(ByteBuffer buf, String filename) {
+    String text = new String(buf.array(), 0, buf.limit(), StandardCharsets.UTF_8);
+    int[] cells = null;
+    int count = 0;
+    Map<Integer, Long> metadata = new TreeMap<Integer, Long>();
+    for(String line : text.split("\n")) {
+      line = line.trim();
+      if(line.startsWith("EXT:")) {
+        for(String entry : line.substring(4).split(",")) {
+          String[] pair = entry.split(":");
+          if(pair.length == 2 && pair[0].equals("swaps")) {
+            try {
+              metadata.put(SWAPS_REMAINING, Long.parseLong(pair[1].trim()));
+            } catch(NumberFormatException e) {
+              // Leave it out, like any other key we don't know
+            }
+          }
+        }
+        continue;
+      }
+      if(line.isEmpty() || !(Character.isDigit(line.charAt(0)) || line.charAt(0) == '.'))
+        continue; // Not part of the board
+      String[] values = line.split("\\s+");
+      if(cells == null) // First line of the board, so now we know how big it is
+        cells = new int[values.length * values.length];
+      if(values.length * values.length != cells.length || count >= cells.length) {
+        throw new IllegalArgumentException(filename + " has a line that doesn't fit the board: " + line);
+      }
+      for(String val : values) {
+        try {
+          cells[count++] = val.equals(".") ? 0 : Integer.parseInt(val);
+        } catch(NumberFormatException e) {
+          throw new IllegalArgumentException("\"" + val + "\" in " + filename + " is not a value");
+        }
+      }
+    }
+    if(cells == null || count != cells.length) {
+      throw new IllegalArgumentException(filename + " does not contain a whole board");
+    }
+
+    int size = (int) Math.round(Math.sqrt(cells.length));
+    SquareSet givens = new SquareSet(size);
+    for(int i = 0; i < cells.length; ++i)
+      if(cells[i] != 0)
+        givens.add(i);
+    SaveFile save = new SaveFile(cells, givens);
+    save.metadata.putAll(metadata);
+    return save;
+  }
+}
@@ -0,0 +1,199 @@
+package knox.sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A sampled trace of what solvers did, written to a compact binary file for TraceSummary to read.
+ *
+ * Every solve gets a start and an end record, so the time each puzzle took is exact. In between,
+ * one in every sampleEvery branches gets a record of how deep the search was, which cell it
+ * branched on and how many values that cell had left (the same thing getMostContrainedSquares
+ * works out). Time between one record and the next goes to the depth of the first, which is
+ * enough to see whether a slow puzzle spent its time thrashing near the root or deep down.
+ * Puzzles that take at least slowMicros have their board written into their end record too.
+ *
+ * Each solver thread gets its own Recorder, which fills a buffer without any locking and writes
+ * it out as one chunk when it is full. The file is:
+ *   magic "SDKT", version, box size, sampleEvery (varint)
+ *   chunks: CHUNK, recorder id, length, then that many bytes of records from that recorder
+ * with the records being:
+ *   START   puzzle number, clues, time since the trace was opened in ns
+ *   BRANCH  ns since the recorder's last record, depth, cell, candidates
+ *   END     ns since the last record, solutions, nodes, backtracks, flags, [cells, one byte each]
+ * Every number is an unsigned LEB128 varint, so most of them take one byte. */
+public class SearchTrace implements Closeable {
+  static final byte[] MAGIC = { 'S', 'D', 'K', 'T' };
+  static final int VERSION = 1;
+
+  // Tags
+  static final int CHUNK = 0;
+  static final int START = 1;
+  static final int BRANCH = 2;
+  static final int END = 3;
+
+  // Flags of an END record
+  static final int CANCELLED = 1;
+  static final int HAS_BOARD = 2;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int MAX_VARINT = 10;
+
+  private final OutputStream out;
+  private final int boxSize;
+  private final int sampleEvery;
+  private final long slowNanos;
+  private final long opened = System.nanoTime();
+  private final List<Recorder> recorders = new ArrayList<Recorder>();
+  private final AtomicLong puzzles = new AtomicLong();
+  private boolean closed;
+
+  /* A trace of 9x9 solves into filename */
+  public SearchTrace(String filename, int sampleEvery, long slowMicros) throws IOException {
+    this(filename, 3, sampleEvery, slowMicros);
+  }
+
+  public SearchTrace(String filename, int boxSize, int sampleEvery, long slowMicros) throws IOException {
+    if(sampleEvery < 1) {
+      throw new IllegalArgumentException("Have to sample at least one branch in " + sampleEvery);
+    }
+    this.boxSize = boxSize;
+    this.sampleEvery = sampleEvery;
+    this.slowNanos = slowMicros * 1000;
+    out = new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE);
+    out.write(MAGIC);
+    out.write(VERSION);
+    out.write(boxSize);
+    byte[] header = new byte[MAX_VARINT];
+    out.write(header, 0, putVarint(header, 0, sampleEvery));
+  }
+
+  public int getBoxSize() {
+    return boxSize;
+  }
+
+  /* Somewhere for one solver to record to. Recorders are NOT thread safe, so every thread needs its
+   * own, but any number of them can share the trace. */
+  public synchronized Recorder newRecorder() {
+    if(closed) {
+      throw new IllegalStateException("The trace is closed");
+    }
+    Recorder recorder = new Recorder(recorders.size());
+    recorders.add(recorder);
+    return recorder;
+  }
+
+  private synchronized void write(int recorder, byte[] records, int length) {
+    if(closed)
+      return;
+    try {
+      byte[] header = new byte[1 + 2 * MAX_VARINT];
+      int n = putVarint(header, 0, CHUNK);
+      n = putVarint(header, n, recorder);
+      n = putVarint(header, n, length);
+      out.write(header, 0, n);
+      out.write(records, 0, length);
+    } catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /* Writes out what every recorder still has and closes the file. Only call this once the solvers
+   * using it have finished. */
+  @Override
+  public void close() throws IOException {
+    List<Recorder> toFlush;
+    synchronized(this) {
+      if(closed)
+        return;
+      toFlush = new ArrayList<Recorder>(recorders);
+    }
+    for(Recorder recorder : toFlush)
+      recorder.flush();
+    synchronized(this) {
+      closed = true;
+      out.close();
+    }
+  }
+
+  static int putVarint(byte[] buf, int pos, long value) {
+    while((value & ~0x7FL) != 0) {
+      buf[pos++] = (byte) (value | 0x80);
+      value >>>= 7;
+    }
+    buf[pos++] = (byte) value;
+    return pos;
+  }
+
+  public final class Recorder {
+    private final int id;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int length;
+    private long last; // nanoTime of the last record
+    private long began; // nanoTime of the start of the current solve
+    private int untilSample = sampleEvery;
+
+    private Recorder(int id) {
+      this.id = id;
+    }
+
+    /* Call when a solve begins */
+    public void start(int clues) {
+      room(3 * MAX_VARINT);
+      began = last = System.nanoTime();
+      length = putVarint(buf, length, START);
+      length = putVarint(buf, length, puzzles.getAndIncrement());
+      length = putVarint(buf, length, clues);
+      length = putVarint(buf, length, began - opened);
+    }
+
+    /* Call whenever the search branches. Only one in every sampleEvery is kept. */
+    public void branch(int depth, int cell, int candidates) {
+      if(--untilSample > 0)
+        return;
+      untilSample = sampleEvery;
+      room(5 * MAX_VARINT);
+      long now = System.nanoTime();
+      length = putVarint(buf, length, BRANCH);
+      length = putVarint(buf, length, now - last);
+      length = putVarint(buf, length, depth);
+      length = putVarint(buf, length, cell);
+      length = putVarint(buf, length, candidates);
+      last = now;
+    }
+
+    /* Call when a solve ends, with the board it was given */
+    public void end(long solutions, long nodes, long backtracks, boolean cancelled, int[] board) {
+      long now = System.nanoTime();
+      boolean slow = now - began >= slowNanos;
+      room(6 * MAX_VARINT + (slow ? board.length : 0));
+      length = putVarint(buf, length, END);
+      length = putVarint(buf, length, now - last);
+      length = putVarint(buf, length, solutions);
+      length = putVarint(buf, length, nodes);
+      length = putVarint(buf, length, backtracks);
+      length = putVarint(buf, length, (cancelled ? CANCELLED : 0) | (slow ? HAS_BOARD : 0));
+      if(slow) {
+        for(int val : board)
+          buf[length++] = (byte) val;
+      }
+      last = now;
+    }
+
+    private void room(int bytes) {
+      if(length + bytes > buf.length)
+        flush();
+    }
+
+    void flush() {
+      if(length > 0)
+        write(id, buf, length);
+      length = 0;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package knox.sudoku;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/* JDK Flight Recorder events for loading and solving puzzles. They show up under "Sudoku" in JDK
+ * Mission Control, or with "jfr print --events knox.sudoku.Solve recording.jfr". Nothing is
+ * recorded unless a recording is running, e.g.
+ *   java -XX:StartFlightRecording=filename=rec.jfr,settings=profile ...
+ * and while none is, nothing is recorded or allocated: the solvers only make an event when
+ * its EventType below says a recording wants it.
+ *
+ * All of them have a duration, so a Solve event covers the solve from start to end. Give them a
+ * threshold (e.g. knox.sudoku.Solve#threshold=10ms) to only keep the slow ones. */
+final class SolverEvents {
+  private SolverEvents() {}
+
+  static final EventType PUZZLE_LOAD = EventType.getEventType(PuzzleLoad.class);
+  static final EventType SOLVE = EventType.getEventType(Solve.class);
+  static final EventType BACKTRACK_BURST = EventType.getEventType(BacktrackBurst.class);
+
+  @Name("knox.sudoku.PuzzleLoad")
+  @Label("Puzzle Load")
+  @Category("Sudoku")
+  @Description("A board loaded into a Sudoku")
+  @StackTrace(false)
+  static final class PuzzleLoad extends Event {
+    @Label("Size")
+    int size;
+
+    @Label("Givens")
+    int givens;
+  }
+
+  @Name("knox.sudoku.Solve")
+  @Label("Solve")
+  @Category("Sudoku")
+  @Description("One solve or count by a solver")
+  @StackTrace(false)
+  static final class Solve extends Event {
+    @Label("Solver")
+    String solver;
+
+    @Label("Size")
+    int size;
+
+    @Label("Clues")
+    int clues;
+
+    @Label("Solutions")
+    long solutions;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Backtracks")
+    long backtracks;
+
+    @Label("Cancelled")
+    boolean cancelled;
+  }
+
+  @Name("knox.sudoku.BacktrackBurst")
+  @Label("Backtrack Burst")
+  @Category("Sudoku")
+  @Description("A run of BitboardSolver.BURST_SIZE backtracks in one solve")
+  @StackTrace(false)
+  static final class BacktrackBurst extends Event {
+    @Label("Backtracks")
+    int backtracks;
+
+    @Label("Shallowest Depth")
+    @Description("How far up the search tree it had to back out to during the burst")
+    int shallowestDepth;
+
+    @Label("Depth")
+    @Description("How deep the search was when the burst ended")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes the solve had tried so far")
+    long nodes;
+  }
+
+  /* Number of values on a board */
+  static int clues(int[] board) {
+    int clues = 0;
+    for(int val : board) {
+      if(val != 0)
+        ++clues;
+    }
+    return clues;
+  }
+}
@@ -0,0 +1,207 @@
+package knox.sudoku;
+
+import java.util.Arrays;
+
+/* A set of squares on a size x size board, stored as one bit per square in an array of longs.
+ * Square (row, col) is bit row*size + col, the same index the solvers use for cells. A 9x9 board
+ * fits in two longs, 16x16 in four and 25x25 in ten.
+ *
+ * Everything is a few bit operations, and the set is changed in place, so a query that fills
+ * one in doesn't allocate anything. To go through the squares in order:
+ *
+ *   for(int i = set.first(); i >= 0; i = set.next(i + 1)) {
+ *     int row = set.rowOf(i), col = set.colOf(i);
+ *   }
+ */
+public class SquareSet {
+  private final int size; // Width of the board
+  private final int capacity; // Number of squares
+  private final long[] words;
+
+  /* An empty set for a 9x9 board */
+  public SquareSet() {
+    this(9);
+  }
+
+  /* An empty set for a size x size board */
+  public SquareSet(int size) {
+    this.size = size;
+    this.capacity = size * size;
+    this.words = new long[(capacity + 63) >>> 6];
+  }
+
+  public SquareSet(SquareSet other) {
+    this(other.size);
+    set(other);
+  }
+
+  /* Width of the board this set is for */
+  public int getSize() {
+    return size;
+  }
+
+  /* Number of squares on the board this set is for */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int indexOf(int row, int col) {
+    return row * size + col;
+  }
+
+  public int rowOf(int index) {
+    return index / size;
+  }
+
+  public int colOf(int index) {
+    return index % size;
+  }
+
+  public void add(int index) {
+    words[index >>> 6] |= 1L << index;
+  }
+
+  public void add(int row, int col) {
+    add(indexOf(row, col));
+  }
+
+  public void remove(int index) {
+    words[index >>> 6] &= ~(1L << index);
+  }
+
+  public void remove(int row, int col) {
+    remove(indexOf(row, col));
+  }
+
+  public boolean contains(int index) {
+    return (words[index >>> 6] >>> index & 1) != 0;
+  }
+
+  public boolean contains(int row, int col) {
+    return contains(indexOf(row, col));
+  }
+
+  public void clear() {
+    for(int i = 0; i < words.length; ++i)
+      words[i] = 0;
+  }
+
+  /* Adds every square on the board */
+  public void fill() {
+    for(int i = 0; i < words.length; ++i)
+      words[i] = -1L;
+    int extra = words.length * 64 - capacity;
+    if(extra > 0)
+      words[words.length - 1] >>>= extra;
+  }
+
+  public boolean isEmpty() {
+    for(long word : words)
+      if(word != 0)
+        return false;
+    return true;
+  }
+
+  public int size() {
+    int count = 0;
+    for(long word : words)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  /* Makes this set the same as the other one */
+  public SquareSet set(SquareSet other) {
+    check(other);
+    System.arraycopy(other.words, 0, words, 0, words.length);
+    return this;
+  }
+
+  /* Union, in place */
+  public SquareSet addAll(SquareSet other) {
+    check(other);
+    for(int i = 0; i < words.length; ++i)
+      words[i] |= other.words[i];
+    return this;
+  }
+
+  /* Intersection, in place */
+  public SquareSet retainAll(SquareSet other) {
+    check(other);
+    for(int i = 0; i < words.length; ++i)
+      words[i] &= other.words[i];
+    return this;
+  }
+
+  /* Difference, in place */
+  public SquareSet removeAll(SquareSet other) {
+    check(other);
+    for(int i = 0; i < words.length; ++i)
+      words[i] &= ~other.words[i];
+    return this;
+  }
+
+  public boolean intersects(SquareSet other) {
+    check(other);
+    for(int i = 0; i < words.length; ++i)
+      if((words[i] & other.words[i]) != 0)
+        return true;
+    return false;
+  }
+
+  /* The first square in the set, or -1 if it is empty */
+  public int first() {
+    return next(0);
+  }
+
+  /* The first square in the set at or after the given index, or -1 if there aren't any */
+  public int next(int from) {
+    if(from >= capacity)
+      return -1;
+    int w = from >>> 6;
+    long bits = words[w] & (-1L << from);
+    while(bits == 0) {
+      if(++w == words.length)
+        return -1;
+      bits = words[w];
+    }
+    return (w << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  /* The n-th square in the set (counting from 0), or -1 if it doesn't have that many */
+  public int get(int n) {
+    int i = first();
+    while(n-- > 0 && i >= 0)
+      i = next(i + 1);
+    return i;
+  }
+
+  private void check(SquareSet other) {
+    if(other.size != size) {
+      throw new IllegalArgumentException("Can't mix squares of a " + size + "x" + size + " board with a "
+          + other.size + "x" + other.size + " one");
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if(!(o instanceof SquareSet)) return false;
+    SquareSet s = (SquareSet) o;
+    return size == s.size && Arrays.equals(words, s.words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words) * 31 + size;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for(int i = first(); i >= 0; i = next(i + 1)) {
+      if(sb.length() > 1)
+        sb.append(", ");
+      sb.append("(").append(rowOf(i)).append(", ").append(colOf(i)).append(")");
+    }
+    return sb.append("}").toString();
+  }
+}
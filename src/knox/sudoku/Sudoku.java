@@ -1,12 +1,13 @@
 package knox.sudoku;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.AbstractCollection;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.Set;
 
 /**
  * 
@@ -23,7 +24,143 @@ import java.util.Set;
 
 public class Sudoku {
   
-	int[][] board = new int[9][9];
+  // Boxes can be up to 8x8 (a 64x64 board), since a mask of every value has to fit in a long
+  public static final int MAX_BOX_SIZE = 8;
+  
+  // The symbol for every value from 0 (a blank) up to 64, for showing and typing them
+  private static final String SYMBOLS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz@#$";
+  
+  // The board is size x size, made of boxSize x boxSize boxes. A normal board is 9x9 with 3x3 boxes.
+  private int boxSize;
+  private int size;
+  
+	int[][] board;
+	
+	// Occupancy masks for every row, column and box. Bit (val-1) is set when val appears at least
+	// once in that unit. The counts behind them let force() put duplicates down and take them back off
+	// without the masks going out of sync.
+	private long[] rowMasks;
+	private long[] colMasks;
+	private long[] boxMasks;
+	private int[][] rowCounts;
+	private int[][] colCounts;
+	private int[][] boxCounts;
+	private long allValuesMask;
+	
+	// Kept up to date by put() so the game over checks don't have to look at the board. A conflict
+	// is a value showing up again in a row, column or box, so 3 fives in a row count as 2.
+	private int filledCount = 0;
+	private int conflictCount = 0;
+	
+	// Every empty square is in the bucket for its number of legal values, and filled squares are in
+	// none of them (their count is -1). put() only recounts the squares that share a row, column or
+	// box with the one that changed, so the most constrained squares are always the first non-empty
+	// bucket.
+	private SquareSet[] buckets;
+	private int[] candidateCounts;
+	
+	// For every value, the squares where it would be legal (filled in or not), and the squares that
+	// are empty. put() updates them along with the buckets, so "where can a 7 go" is a copy of a few
+	// longs instead of a scan of the board.
+	private SquareSet[] legalPositions;
+	private SquareSet empties;
+	private SquareSet scratch;
+	private SquareSet[] unitSquares; // Every row, then every column, then every box
+	
+	// Squares that were filled in when the board was loaded, as opposed to ones the player entered
+	private SquareSet givens;
+	
+	// The last snapshot handed out, and which rows changed since. Rows that didn't are shared with
+	// the next one, and if none did it is handed out again.
+	private BoardSnapshot lastSnapshot;
+	private boolean[] rowChanged;
+	private boolean[] positionsChanged;
+	private boolean changedSinceSnapshot;
+	
+	// Goes up with every change to the board, so work done on a snapshot can tell if it is out of date
+	private long version = 0;
+	
+	// One ParallelSolver per box size, made the first time it is needed and shared by every board, so
+	// solve() and countSolutions() reuse the same per-thread solvers instead of warming up new ones
+	private static final ParallelSolver[] parallelSolvers = new ParallelSolver[MAX_BOX_SIZE + 1];
+	
+	/* Gets told which squares change, so a view only has to redraw those */
+	public interface ChangeListener {
+	  /* The value at (row, col) changed */
+	  void squareChanged(int row, int col);
+	  
+	  /* Every square was emptied, and the board may have changed size. When a board is loaded, this
+	   * comes first and then squareChanged for every value on it. */
+	  void boardCleared();
+	}
+	
+	private final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
+	
+	/* A normal 9x9 board */
+	public Sudoku() {
+	  this(3);
+	}
+	
+	/* A board made of boxSize x boxSize boxes, so 4 makes a 16x16 board and 5 a 25x25 one */
+	public Sudoku(int boxSize) {
+	  resize(boxSize);
+	}
+	
+	/* Throws away the board and makes an empty one of the given box size */
+	private void resize(int boxSize) {
+	  if(boxSize < 1 || boxSize > MAX_BOX_SIZE) {
+	    throw new IllegalArgumentException("Boxes have to be between 1x1 and " + MAX_BOX_SIZE + "x" + MAX_BOX_SIZE);
+	  }
+	  this.boxSize = boxSize;
+	  this.size = boxSize * boxSize;
+	  board = new int[size][size];
+	  rowMasks = new long[size];
+	  colMasks = new long[size];
+	  boxMasks = new long[size];
+	  rowCounts = new int[size][size + 1];
+	  colCounts = new int[size][size + 1];
+	  boxCounts = new int[size][size + 1];
+	  allValuesMask = allValuesMask(size);
+	  buckets = new SquareSet[size + 1];
+	  for(int i = 0; i <= size; ++i)
+	    buckets[i] = new SquareSet(size);
+	  candidateCounts = new int[size * size];
+	  legalPositions = new SquareSet[size + 1];
+	  for(int val = 1; val <= size; ++val)
+	    legalPositions[val] = new SquareSet(size);
+	  empties = new SquareSet(size);
+	  scratch = new SquareSet(size);
+	  unitSquares = new SquareSet[size * 3];
+	  for(int i = 0; i < size * 3; ++i)
+	    unitSquares[i] = new SquareSet(size);
+	  for(int r = 0; r < size; ++r) {
+	    for(int c = 0; c < size; ++c) {
+	      unitSquares[r].add(r, c);
+	      unitSquares[size + c].add(r, c);
+	      unitSquares[size * 2 + getBox(r, c)].add(r, c);
+	    }
+	  }
+	  positionsChanged = new boolean[size + 1];
+	  givens = new SquareSet(size);
+	  rowChanged = new boolean[size];
+	  lastSnapshot = null;
+	  clear();
+	}
+	
+	/* Width (and height) of the board */
+	public int getSize() {
+	  return size;
+	}
+	
+	/* Width (and height) of each box */
+	public int getBoxSize() {
+	  return boxSize;
+	}
+	
+	/* A SquareSet that fits this board */
+	public SquareSet newSquareSet() {
+	  return new SquareSet(size);
+	}
 	
 	public int get(int row, int col) {
 	  try {
@@ -38,113 +175,350 @@ public class Sudoku {
 	 * and return a LinkedList containing all the SudokuSquares that make it illegal */
 	public Collection<SudokuSquare> set(int row, int col, int val) {
 		// TODO: make sure val is legal
-	  if(val < 0 || val > 9) {
-	    throw new IllegalArgumentException("\"" + val + "\"" + " is an invalid value on a sudoku board");
-	  }
+	  if(Metrics.ENABLED)
+	    Metrics.SET_CALLS.increment();
+	  checkValue(val);
 		Collection<SudokuSquare> illegals = getLegalViolations(row, col, val);
 		if(illegals.isEmpty()) { // Only if it was legal
-		  try {
-	      board[row][col] = val;
-	    } catch(ArrayIndexOutOfBoundsException e) {
-	      throw new ArrayIndexOutOfBoundsException("(" + col + ", " + row + ") is out of bounds of the board.");
-	    }
+		  put(row, col, val);
 		}
 		return illegals;
 	}
 	
+	/* Same as above, but the squares that make it illegal go in the given SquareSet instead of a new list.
+	 * Returns true if the value was set. */
+	public boolean set(int row, int col, int val, SquareSet illegals) {
+	  if(Metrics.ENABLED)
+	    Metrics.SET_CALLS.increment();
+	  checkValue(val);
+	  if(!getLegalViolations(row, col, val, illegals).isEmpty())
+	    return false;
+	  put(row, col, val);
+	  return true;
+	}
+	
 	// Force a value into a position without checking if it is legal. Only call this if you know it is.
 	public void force(int row, int col, int val) {
+	  if(Metrics.ENABLED)
+	    Metrics.FORCE_CALLS.increment();
+	  checkValue(val);
+	  put(row, col, val);
+	}
+	
+	private void checkValue(int val) {
+	  if(val < 0 || val > size) {
+	    throw new IllegalArgumentException("\"" + val + "\"" + " is an invalid value on a sudoku board");
+	  }
+	}
+	
+	/* Writes a value to the board and keeps the row, column and box masks up to date. Every
+	 * write to the board should go through here. */
+	private void put(int row, int col, int val) {
+	  int old;
 	  try {
-      board[row][col] = val;
-    } catch(ArrayIndexOutOfBoundsException e) {
-      throw new ArrayIndexOutOfBoundsException("(" + col + ", " + row + ") is out of bounds of the board.");
-    }
+	    old = board[row][col];
+	  } catch(ArrayIndexOutOfBoundsException e) {
+	    throw new ArrayIndexOutOfBoundsException("(" + col + ", " + row + ") is out of bounds of the board.");
+	  }
+	  if(old == val)
+	    return;
+	  int box = getBox(row, col);
+	  if(old != 0) {
+	    long bit = maskOf(old);
+	    --filledCount;
+	    conflictCount -= removeFrom(rowCounts[row], old) + removeFrom(colCounts[col], old) + removeFrom(boxCounts[box], old);
+	    if(rowCounts[row][old] == 0) rowMasks[row] &= ~bit;
+	    if(colCounts[col][old] == 0) colMasks[col] &= ~bit;
+	    if(boxCounts[box][old] == 0) boxMasks[box] &= ~bit;
+	  }
+	  if(val != 0) {
+	    long bit = maskOf(val);
+	    ++filledCount;
+	    conflictCount += addTo(rowCounts[row], val) + addTo(colCounts[col], val) + addTo(boxCounts[box], val);
+	    rowMasks[row] |= bit;
+	    colMasks[col] |= bit;
+	    boxMasks[box] |= bit;
+	  }
+	  board[row][col] = val;
+	  if(old == 0)
+	    empties.remove(row, col);
+	  else if(val == 0)
+	    empties.add(row, col);
+	  rowChanged[row] = true;
+	  positionsChanged[old] = true;
+	  positionsChanged[val] = true;
+	  changedSinceSnapshot = true;
+	  ++version;
+	  recountPeers(row, col, old, val);
+	  for(int i = 0; i < listeners.size(); ++i)
+	    listeners.get(i).squareChanged(row, col);
 	}
 	
-	public boolean isLegal(int row, int col, int val) {
-	  // Check cross section of rows and columns
-	  for(int i = 0; i < 9; ++i) {
-	    if(board[row][i] == val || board[i][col] == val) {
-	      return false;
+	/* Moves the square and everything that shares a row, column or box with it (20 others on a 9x9
+	 * board) to the right bucket, and works out again whether the old and new values are legal there */
+	private void recountPeers(int row, int col, int old, int val) {
+	  int cr = row - row % boxSize;
+	  int cc = col - col % boxSize;
+	  for(int i = 0; i < size; ++i) {
+	    recount(row, i, old, val);
+	    if(i != row)
+	      recount(i, col, old, val);
+	  }
+	  for(int r = cr; r < cr + boxSize; ++r) {
+	    if(r == row)
+	      continue;
+	    for(int c = cc; c < cc + boxSize; ++c) {
+	      if(c != col)
+	        recount(r, c, old, val);
 	    }
 	  }
-	  
-	  // Check the 3*3 grid
-	  int cr = row - row % 3; // Corner row
-	  int cc = col - col % 3; // Corner column
-    for(int c = cc; c < cc+3; ++c)
-      for(int r = cr; r < cr+3; ++r)
-        if(board[r][c] == val)
-          return false;
-	  
-		return true;
+	}
+	
+	private void recount(int row, int col, int oldVal, int newVal) {
+	  int cell = row * size + col;
+	  long legal = getLegalValuesMask(row, col);
+	  if(oldVal != 0)
+	    setLegal(legalPositions[oldVal], cell, (legal & maskOf(oldVal)) != 0);
+	  if(newVal != 0)
+	    setLegal(legalPositions[newVal], cell, (legal & maskOf(newVal)) != 0);
+	  int count = board[row][col] == 0 ? Long.bitCount(legal) : -1;
+	  int old = candidateCounts[cell];
+	  if(count == old)
+	    return;
+	  if(old >= 0)
+	    buckets[old].remove(cell);
+	  if(count >= 0)
+	    buckets[count].add(cell);
+	  candidateCounts[cell] = count;
+	}
+	
+	private static void setLegal(SquareSet positions, int cell, boolean legal) {
+	  if(legal)
+	    positions.add(cell);
+	  else
+	    positions.remove(cell);
+	}
+	
+	/* Counts one more of val in a unit. Returns 1 if that made a new conflict. */
+	private static int addTo(int[] counts, int val) {
+	  return counts[val]++ > 0 ? 1 : 0;
+	}
+	
+	/* Counts one less of val in a unit. Returns 1 if that got rid of a conflict. */
+	private static int removeFrom(int[] counts, int val) {
+	  return --counts[val] > 0 ? 1 : 0;
+	}
+	
+	public boolean isLegal(int row, int col, int val) {
+	  if(Metrics.ENABLED)
+	    Metrics.IS_LEGAL_CALLS.increment();
+	  if(val < 1 || val > size)
+	    return false;
+	  // A value is legal if it doesn't show up in the row, column or box
+	  return (getUsedMask(row, col) & maskOf(val)) == 0;
+	}
+	
+	/* Returns the values already used in the row, column and box of the given position as a mask,
+	 * where bit (val-1) is set if val is used. */
+	public long getUsedMask(int row, int col) {
+	  return rowMasks[row] | colMasks[col] | boxMasks[getBox(row, col)];
+	}
+	
+	/* Same as getLegalValues, but as a mask where bit (val-1) is set if val is legal. Use Long.bitCount
+	 * to count them. This doesn't allocate anything, so prefer it in loops. */
+	public long getLegalValuesMask(int row, int col) {
+	  return ~getUsedMask(row, col) & allValuesMask;
+	}
+	
+	/* A mask with the bits of every value on this board set */
+	public long getAllValuesMask() {
+	  return allValuesMask;
+	}
+	
+	/* A mask with the bits of every value from 1 to size set */
+	public static long allValuesMask(int size) {
+	  return size == 64 ? -1L : (1L << size) - 1;
+	}
+	
+	/* The mask bit used for a value (1 and up) */
+	public static long maskOf(int val) {
+	  return 1L << (val - 1);
+	}
+	
+	/* The text shown for a value. Values past 9 (on boards bigger than 9x9) are shown as A, B, C...,
+	 * then a, b, c... past Z (on boards bigger than 35x35), then @, # and $ up to 64. */
+	public static String symbolOf(int val) {
+	  return String.valueOf(SYMBOLS.charAt(val));
+	}
+	
+	/* The value for a symbol on a board that wide, the other way around from symbolOf, or -1 if it
+	 * isn't one. Boards up to 35x35 only use upper case letters, so lower case ones mean the same. */
+	public static int valueOf(char symbol, int size) {
+	  if(size <= 35)
+	    symbol = Character.toUpperCase(symbol);
+	  return SYMBOLS.indexOf(symbol);
+	}
+	
+	/* Which box (left to right, top to bottom) a position is in */
+	public int getBox(int row, int col) {
+	  return row / boxSize * boxSize + col / boxSize;
 	}
 	
 	/* Returns a Collection containing all the SudokuSquares that make putting a particular value
 	 * in a particular place illegal. (i.e. it will return the 4 that is adjacent to the 4 you want to put down) */
 	public Collection<SudokuSquare> getLegalViolations(int row, int col, int val) {
-	  LinkedList<SudokuSquare> list = new LinkedList<SudokuSquare>(); // Values should not repeat
-	  int cr = row - row % 3; // Corner row
-    int cc = col - col % 3; // Corner column
+	  return toSquares(getLegalViolations(row, col, val, newSquareSet()));
+	}
+	
+	/* Same as above, but fills in the given SquareSet (clearing it first) instead of allocating a list */
+	public SquareSet getLegalViolations(int row, int col, int val, SquareSet out) {
+	  out.clear();
+	  int cr = row - row % boxSize; // Corner row
+    int cc = col - col % boxSize; // Corner column
 	  
-    // Check all rows and columns outside of the 3x3 grid it is contained in
-    for(int i = 0; i < 9; ++i) {
-      // Iterate cross section of rows/columns, skipping the current 3x3 grid.
-      if(board[row][i] == val && (i < cc || i > cc+2)) {
-        list.add(new SudokuSquare(row, i, val));
+    // Check all rows and columns outside of the box it is contained in
+    for(int i = 0; i < size; ++i) {
+      // Iterate cross section of rows/columns, skipping the current box.
+      if(board[row][i] == val && (i < cc || i >= cc+boxSize)) {
+        out.add(row, i);
       } 
-      if(board[i][col] == val && (i < cr || i > cr+2)) {
-        list.add(new SudokuSquare(i, col, val));
+      if(board[i][col] == val && (i < cr || i >= cr+boxSize)) {
+        out.add(i, col);
       }
     }
     
-    // Check the 3*3 grid
-    for(int c = cc; c < cc+3; ++c) {
-      for(int r = cr; r < cr+3; ++r) {
+    // Check the box
+    for(int c = cc; c < cc+boxSize; ++c) {
+      for(int r = cr; r < cr+boxSize; ++r) {
         if(board[r][c] == val) {
-          list.add(new SudokuSquare(r, c, val));
+          out.add(r, c);
         }
       }
     }
-    return list;
+    return out;
   }
 	
 	/* Returns a Collection of all the most constrained squares, where each would be equally suitable
 	 * for use as a hint. */
 	public Collection<SudokuSquare> getMostContrainedSquares() {
-	  LinkedList<SudokuSquare> list = new LinkedList<SudokuSquare>();
-	  int numLegalValues = Integer.MAX_VALUE;
-	  for(int c = 0; c < 9; ++c) {
-	    for(int r = 0; r < 9; ++r) {
-	      if(board[r][c] == 0) { // It is only viable if it is empty
-	        int legalCount = getLegalValues(r, c).size();
-	        if(legalCount <= numLegalValues) { // Add another possibility to the list
-	          if(legalCount < numLegalValues) // An even more constrained one has been found. 
-	            list = new LinkedList<SudokuSquare>(); // Invalidate all lesser-constrained possibilites
-	          numLegalValues = legalCount;
-	          list.add(new SudokuSquare(r, c, board[r][c])); // Record this square
-	        }
-	      }
-	    }
+	  return toSquares(getMostContrainedSquares(newSquareSet()));
+	}
+	
+	/* Same as above, but fills in the given SquareSet (clearing it first) instead of allocating a list */
+	public SquareSet getMostContrainedSquares(SquareSet out) {
+	  for(SquareSet bucket : buckets) {
+	    if(!bucket.isEmpty()) // The first bucket with anything in it is the most constrained
+	      return out.set(bucket);
 	  }
-	  return list;
+	  out.clear(); // The board is full
+	  return out;
+	}
+	
+	/* One of the empty squares with the fewest legal values, as row*size + col, or -1 if the board is
+	 * full. Good for picking what to branch on. */
+	public int getMostConstrainedSquare() {
+	  for(SquareSet bucket : buckets) {
+	    int cell = bucket.first();
+	    if(cell >= 0)
+	      return cell;
+	  }
+	  return -1;
+	}
+	
+	/* Number of legal values for a square, or -1 if it is filled in */
+	public int getCandidateCount(int row, int col) {
+	  return candidateCounts[row * size + col];
 	}
 	
-	/* Gets all legal positions where a number could possibly go, including on top of existing numbers */
+	/* Gets all legal positions where a number could possibly go, including on top of existing numbers.
+	 * The squares are only made as they are iterated over, and hold the values on the board then. */
 	public Collection<SudokuSquare> getAllLegalPositions(int val) {
-	  HashSet<SudokuSquare> set = new HashSet<SudokuSquare>();
-	  for(int c = 0; c < 9; ++c) {
-      for(int r = 0; r < 9; ++r) {
-        if(getLegalValues(r, c).contains(val))
-          set.add(new SudokuSquare(r, c, board[r][c])); // Add all squares to the set
-      }
+	  return new SquareView(getAllLegalPositions(val, newSquareSet()));
+	}
+	
+	/* Same as above, but fills in the given SquareSet instead of allocating anything */
+	public SquareSet getAllLegalPositions(int val, SquareSet out) {
+	  if(val < 1 || val > size) {
+	    out.clear();
+	    return out;
+	  }
+	  return out.set(legalPositions[val]);
+	}
+	
+	/* The empty squares where val is legal */
+	public SquareSet getCandidatePositions(int val, SquareSet out) {
+	  return getAllLegalPositions(val, out).retainAll(empties);
+	}
+	
+	/* The empty squares that are the only place left for val in their row, column or box (hidden
+	 * singles). Fills in out and returns it. */
+	public SquareSet getHiddenSingles(int val, SquareSet out) {
+	  out.clear();
+	  if(val < 1 || val > size)
+	    return out;
+	  for(SquareSet unit : unitSquares) {
+	    scratch.set(legalPositions[val]).retainAll(empties).retainAll(unit);
+	    int first = scratch.first();
+	    if(first >= 0 && scratch.next(first + 1) < 0)
+	      out.add(first);
+	  }
+	  return out;
+	}
+	
+	/* A SquareSet seen as a collection of SudokuSquares, made one at a time while iterating */
+	private class SquareView extends AbstractCollection<SudokuSquare> {
+	  private final SquareSet squares;
+	  
+	  SquareView(SquareSet squares) {
+	    this.squares = squares;
+	  }
+	  
+	  @Override
+	  public Iterator<SudokuSquare> iterator() {
+	    return new Iterator<SudokuSquare>() {
+	      private int next = squares.first();
+	      
+	      @Override
+	      public boolean hasNext() {
+	        return next >= 0;
+	      }
+	      
+	      @Override
+	      public SudokuSquare next() {
+	        if(next < 0)
+	          throw new NoSuchElementException();
+	        int r = squares.rowOf(next);
+	        int c = squares.colOf(next);
+	        next = squares.next(next + 1);
+	        return new SudokuSquare(r, c, board[r][c]);
+	      }
+	    };
+	  }
+	  
+	  @Override
+	  public int size() {
+	    return squares.size();
+	  }
+	  
+	  @Override
+	  public boolean contains(Object o) {
+	    if(!(o instanceof SudokuSquare))
+	      return false;
+	    SudokuSquare sq = (SudokuSquare) o;
+	    return sq.row >= 0 && sq.row < size && sq.col >= 0 && sq.col < size
+	        && squares.contains(sq.row, sq.col) && board[sq.row][sq.col] == sq.value;
 	  }
-	  /*for(int c = 0; c < 9; ++c) {
-      for(int r = 0; r < 9; ++r) {
-        set.removeAll(getLegalViolations(r, c, val)); // Remove squares that are illegal
-      }
-	  }*/
-	  return set;
+	}
+	
+	/* Turns a SquareSet into a list of SudokuSquares holding the values currently on the board */
+	public Collection<SudokuSquare> toSquares(SquareSet squares) {
+	  LinkedList<SudokuSquare> list = new LinkedList<SudokuSquare>();
+	  for(int i = squares.first(); i >= 0; i = squares.next(i + 1)) {
+	    int r = squares.rowOf(i);
+	    int c = squares.colOf(i);
+	    list.add(new SudokuSquare(r, c, board[r][c]));
+	  }
+	  return list;
 	}
 	
 	public Collection<Integer> getLegalValues(int row, int col) {
@@ -152,62 +526,177 @@ public class Sudoku {
 	  // Get all values that don't show up in:
 	  // the same row as row
 	  // the same column as col
-	  // the same 3x3 area where row,col is located.
-	  Set<Integer> result = new HashSet<>(Arrays.asList(1,2,3,4,5,6,7,8,9));
-	  
-	  // Remove values in the same column or row from the list
-	  for(int i = 0; i < 9; ++i) {
-	    result.remove(board[row][i]);
-	    result.remove(board[i][col]);
+	  // the same box where row,col is located.
+	  if(Metrics.ENABLED)
+	    Metrics.LEGAL_VALUES_CALLS.increment();
+	  long mask = getLegalValuesMask(row, col);
+	  List<Integer> result = new ArrayList<Integer>(Long.bitCount(mask));
+	  for(; mask != 0; mask &= mask - 1) {
+	    result.add(Long.numberOfTrailingZeros(mask) + 1);
 	  }
-	  
-	  // Remove values in the same 3x3 grid
-	  // Doesn't matter if it checks some twice
-	  int cr = row - row % 3;
-	  int cc = col - col % 3;
-	  // Check the 3*3 grid
-    for(int c = cc; c < cc+3; ++c) {
-      for(int r = cr; r < cr+3; ++r) {
-        result.remove(board[r][c]);
-      }
-    }
 		return result;
 	}
 	
 
 	
+	/* Loads a saved game (see SaveFile), either a binary save or a board saved by toSaveString. The
+	 * size of the board comes from the save, so this also loads 16x16 and 25x25 boards. */
 	public void load(String filename) {
-		try {
-			Scanner scan = new Scanner(new FileInputStream(filename));
-			// read the file
-			for (int r=0; r<9; r++) {
-				for (int c=0; c<9; c++) {
-					int val = scan.nextInt();
-					board[r][c] = val;
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+	  SaveFile.read(filename).applyTo(this);
+	}
+	
+	/* Loads a board from size*size values in row-major order, with 0 for blanks. The size of the board
+	 * comes from the number of values, so 81 is a 9x9 board and 256 is 16x16. Every value on it
+	 * counts as given. */
+	public void load(int[] cells) {
+	  load(cells, null);
+	}
+	
+	/* Same as load(int[]), but only the squares in givens count as given. With null, every value does. */
+	public void load(int[] cells, SquareSet givens) {
+	  int boxSize = (int) Math.round(Math.sqrt(Math.sqrt(cells.length)));
+	  if(boxSize * boxSize * boxSize * boxSize != cells.length) {
+	    throw new IllegalArgumentException(cells.length + " cells is not a square board made of square boxes");
+	  }
+	  long start = Metrics.ENABLED ? System.nanoTime() : 0;
+	  SolverEvents.PuzzleLoad event = SolverEvents.PUZZLE_LOAD.isEnabled() ? new SolverEvents.PuzzleLoad() : null;
+	  if(event != null)
+	    event.begin();
+	  if(boxSize != this.boxSize)
+	    resize(boxSize);
+	  clear();
+	  for(int i = 0; i < cells.length; ++i) {
+	    // Not force(), so a load shows up once in the LOAD histogram instead of size*size times
+	    // in FORCE_CALLS
+	    checkValue(cells[i]);
+	    put(i / size, i % size, cells[i]);
+	    if(givens == null ? cells[i] != 0 : givens.contains(i))
+	      this.givens.add(i);
+	  }
+	  if(Metrics.ENABLED)
+	    Metrics.LOAD.record(System.nanoTime() - start);
+	  if(event != null)
+	    event.end();
+	  if(event != null && event.shouldCommit()) {
+	    event.size = size;
+	    event.givens = this.givens.size();
+	    event.commit();
+	  }
+	}
+	
+	/* Changes the board to match size*size values in row-major order, like load(int[]), but one square
+	 * at a time, so listeners only hear about the squares that are different. Which squares are given
+	 * stays the same. A board of a different size is loaded instead. */
+	public void update(int[] cells) {
+	  if(cells.length != size * size) {
+	    load(cells);
+	    return;
+	  }
+	  for(int i = 0; i < cells.length; ++i) {
+	    checkValue(cells[i]);
+	    put(i / size, i % size, cells[i]);
+	  }
+	}
+	
+	/* An immutable copy of the board as it is now, for looking at "what if" boards (see BoardSnapshot)
+	 * or handing to another thread. Only the rows that changed since the last one are copied. */
+	public BoardSnapshot snapshot() {
+	  if(lastSnapshot == null || changedSinceSnapshot) {
+	    int[][] rows = new int[size][];
+	    for(int r = 0; r < size; ++r)
+	      rows[r] = lastSnapshot != null && !rowChanged[r] ? lastSnapshot.row(r) : board[r].clone();
+	    SquareSet[] positions = new SquareSet[size + 1];
+	    for(int val = 1; val <= size; ++val) {
+	      positions[val] = lastSnapshot != null && !positionsChanged[val] ? lastSnapshot.positions(val)
+	          : new SquareSet(legalPositions[val]);
+	    }
+	    lastSnapshot = new BoardSnapshot(boxSize, rows, rowMasks.clone(), colMasks.clone(), boxMasks.clone(), positions);
+	    Arrays.fill(rowChanged, false);
+	    Arrays.fill(positionsChanged, false);
+	    changedSinceSnapshot = false;
+	  }
+	  return lastSnapshot;
+	}
+	
+	/* A number that changes whenever anything on the board does. Something worked out from a
+	 * snapshot still holds if the version is the same as when the snapshot was taken. */
+	public long getVersion() {
+	  return version;
+	}
+	
+	/* True if the value at the position was part of the puzzle when it was loaded */
+	public boolean isGiven(int row, int col) {
+	  return givens.contains(row, col);
+	}
+	
+	/* Fills in out with the squares that were part of the puzzle when it was loaded */
+	public SquareSet getGivens(SquareSet out) {
+	  return out.set(givens);
+	}
+	
+	/* Copies the board into size*size values in row-major order, with 0 for blanks. This is the layout
+	 * the solvers work with. */
+	public int[] copyTo(int[] cells) {
+	  for(int r = 0; r < size; ++r) {
+	    System.arraycopy(board[r], 0, cells, r * size, size);
+	  }
+	  return cells;
+	}
+	
+	/* Empties the board */
+	public void clear() {
+	  for(int i = 0; i < size; ++i) {
+	    Arrays.fill(board[i], 0);
+	    Arrays.fill(rowCounts[i], 0);
+	    Arrays.fill(colCounts[i], 0);
+	    Arrays.fill(boxCounts[i], 0);
+	  }
+	  Arrays.fill(rowMasks, 0);
+	  Arrays.fill(colMasks, 0);
+	  Arrays.fill(boxMasks, 0);
+	  filledCount = 0;
+	  conflictCount = 0;
+	  givens.clear();
+	  Arrays.fill(rowChanged, true);
+	  Arrays.fill(positionsChanged, true);
+	  changedSinceSnapshot = true;
+	  ++version;
+	  for(SquareSet bucket : buckets)
+	    bucket.clear();
+	  buckets[size].fill();
+	  Arrays.fill(candidateCounts, size);
+	  for(int val = 1; val <= size; ++val)
+	    legalPositions[val].fill();
+	  empties.fill();
+	  for(int i = 0; i < listeners.size(); ++i)
+	    listeners.get(i).boardCleared();
+	}
+	
+	public void addChangeListener(ChangeListener listener) {
+	  listeners.add(listener);
+	}
+	
+	public void removeChangeListener(ChangeListener listener) {
+	  listeners.remove(listener);
 	}
 	
 	/**
-	 * Return which 3x3 grid this row is contained in.
+	 * Return which row of boxes this row is contained in.
 	 * 
 	 * @param row
 	 * @return
 	 */
 	public int get3x3row(int row) {
-		return row / 3;
+		return row / boxSize;
 	}
 	
 	/**
 	 * Convert this Sudoku board into a String
 	 */
 	public String toString() {
-		StringBuilder sb = new StringBuilder(9*9*2+1);
-		for (int r=0; r<9; r++) {
-			for (int c=0; c<9; c++) {
+		StringBuilder sb = new StringBuilder(size*size*3+1);
+		for (int r=0; r<size; r++) {
+			for (int c=0; c<size; c++) {
 				int val = get(r, c);
 				if (val == 0) {
 					sb.append("_ ");
@@ -222,9 +711,9 @@ public class Sudoku {
 	
 	/* Returns a string, but with zeroes instead of underscores. */
 	public String toSaveString() {
-    StringBuilder sb = new StringBuilder(9*9*2+1);
-    for (int r=0; r<9; r++) {
-      for (int c=0; c<9; c++) {
+    StringBuilder sb = new StringBuilder(size*size*3+1);
+    for (int r=0; r<size; r++) {
+      for (int c=0; c<size; c++) {
         int val = get(r, c);
         if (val == 0) {
           sb.append("0 ");
@@ -241,6 +730,9 @@ public class Sudoku {
 		Sudoku sudoku = new Sudoku();
 		sudoku.load("easy1.txt");
 		System.out.println(sudoku);
+		long solutions = sudoku.countSolutions(2);
+		System.out.println(solutions == 0 ? "This puzzle has no solution" : solutions == 1 ? "This puzzle has one solution"
+		    : "This puzzle has more than one solution");
 		
 		Scanner scan = new Scanner(System.in);
 		while (!sudoku.gameOver()) {
@@ -254,16 +746,75 @@ public class Sudoku {
 		}
 	}
 
-	/* Return true if all spots are filled (there are not any zeroes in the board) */
-	public boolean gameOver() {
-	  for(int r = 0; r < 9; ++r) {
-	    for(int c = 0; c < 9; ++c) {
-	      if(isBlank(r, c)) {
-	        return false;
-	      }
-	    }
+	/* Counts the solutions of the board, but stops once it gets to cap. So countSolutions(2) is 0 for
+	 * no solutions, 1 for a unique one and 2 for more than one. */
+	public long countSolutions(long cap) {
+	  if(cap <= 0) {
+	    throw new IllegalArgumentException("The cap has to be at least 1");
 	  }
-		return true;
+	  return new BitboardSolver(boxSize).countSolutions(copyTo(new int[size * size]), cap);
+	}
+	
+	/* Counts every solution of the board, splitting the work across all the cores. This can take a very
+	 * long time on a board that is mostly empty, so use countSolutions(cap) unless you know it isn't. */
+	public long countSolutions() {
+	  return parallelSolver(boxSize).countSolutions(copyTo(new int[size * size]));
+	}
+	
+	/* Fills in every blank with a solution, splitting the search across all the cores. Returns false,
+	 * leaving the board alone, if there isn't one. */
+	public boolean solve() {
+	  int[] cells = copyTo(new int[size * size]);
+	  if(!parallelSolver(boxSize).solve(cells))
+	    return false;
+	  for(int r = 0; r < size; ++r)
+	    for(int c = 0; c < size; ++c)
+	      if(board[r][c] == 0)
+	        force(r, c, cells[r * size + c]);
+	  return true;
+	}
+
+	private static ParallelSolver parallelSolver(int boxSize) {
+	  synchronized(parallelSolvers) {
+	    if(parallelSolvers[boxSize] == null)
+	      parallelSolvers[boxSize] = new ParallelSolver(boxSize);
+	    return parallelSolvers[boxSize];
+	  }
+	}
+	
+	/* True if the board has exactly one solution */
+	public boolean hasUniqueSolution() {
+	  return countSolutions(2) == 1;
+	}
+	
+	/* Return true if the puzzle has been solved: all spots are filled and nothing breaks the rules */
+	public boolean gameOver() {
+		return isSolved();
+	}
+	
+	/* True if there are not any zeroes in the board */
+	public boolean isFilled() {
+	  return filledCount == size * size;
+	}
+	
+	/* True if no value shows up twice in any row, column or box. Blanks are fine. */
+	public boolean isValid() {
+	  return conflictCount == 0;
+	}
+	
+	/* True if the board is both filled and valid */
+	public boolean isSolved() {
+	  return isFilled() && isValid();
+	}
+	
+	/* Number of squares that aren't blank */
+	public int getFilledCount() {
+	  return filledCount;
+	}
+	
+	/* Number of times a value shows up again in a row, column or box it is already in */
+	public int getConflictCount() {
+	  return conflictCount;
 	}
 
 	public boolean isBlank(int row, int col) {
@@ -19,6 +19,7 @@ import java.awt.dnd.DropTargetEvent;
 import java.awt.dnd.DropTargetListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.KeyAdapter;
@@ -28,14 +29,16 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.NoSuchElementException;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -50,6 +53,8 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.TransferHandler;
 import javax.swing.UIManager;
@@ -81,10 +86,31 @@ import javax.swing.plaf.basic.BasicInternalFrameTitlePane.SystemMenuBar;
 public class SudokuGUI extends JFrame {
 
   private Sudoku sudoku;
+  
+  // Hints, the legal values popup and the Super Swap scan are worked out on this thread from a
+  // snapshot of the board, so the window never freezes waiting for them. Only one runs at a time,
+  // and starting another one (or clicking or typing) cancels it.
+  private final ExecutorService analysis = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "sudoku-analysis");
+    t.setDaemon(true);
+    return t;
+  });
+  private Future<?> pendingAnalysis;
+  private int analysisCount = 0; // Goes up with every analysis started or cancelled
+  
+  // Works out hints the way a person would, on a copy of the board. Only touched by the analysis
+  // thread. The copy keeps the candidates it crossed off as long as the board only gains values.
+  private final Sudoku hintBoard = new Sudoku();
+  private final DeductionEngine deductions = new DeductionEngine(hintBoard);
+  
+  // Every move the player makes goes through here, so it can be undone
+  private MoveJournal journal;
 
   private static final long serialVersionUID = 1L;
+  
+  private static final String TITLE = "Sudoku!";
 
-  // Sudoku boards have 9 rows and 9 columns
+  // Sudoku boards have 9 rows and 9 columns, unless a bigger board is loaded
   private int numRows = 9;
   private int numCols = 9;
 
@@ -95,6 +121,11 @@ public class SudokuGUI extends JFrame {
   // The number of times you can use SuperSwap
   private int swapsRemaining = 2;
   
+  // How long this game has been played, so it can be saved. Time from before the game was loaded is
+  // in elapsedBefore, and the clock has been running since playStart.
+  private long elapsedBefore = 0;
+  private long playStart = System.currentTimeMillis();
+  
   // A toggle to enable only legal values to be entered
   private boolean enableLegalValuesOnly = false;
   
@@ -103,6 +134,18 @@ public class SudokuGUI extends JFrame {
   
   JFileChooser sharedFileChooser = new JFileChooser();
   
+  // Makes the puzzles for "New Game"
+  private final PuzzleGenerator generator = new PuzzleGenerator(System.nanoTime());
+  private final int[] newPuzzle = new int[81];
+  
+  // Reused for every query that returns squares, so typing doesn't allocate. It is replaced when a
+  // board of a different size is loaded.
+  private SquareSet violations = new SquareSet();
+  
+  // Squares whose button is out of date, because their value, highlight or selection changed.
+  // update() only touches these, so a key press redraws one or two buttons instead of all of them.
+  private SquareSet dirty = new SquareSet();
+  
   // For hints
   //private int hintRow = -1;
   //private int hintCol = -1;
@@ -117,6 +160,8 @@ public class SudokuGUI extends JFrame {
   protected int squareSize = 90;
   private int width = DOUBLE_MARGIN_SIZE + squareSize * numCols;    		
   private int height = DOUBLE_MARGIN_SIZE + squareSize * numRows;  
+  // Bigger boards get smaller squares, so the window stays about this big
+  private static final int BOARD_SIZE = 810;
 
   private static Font FONT = new Font("Verdana", Font.BOLD, 40);
   private static Color FONT_COLOR = Color.BLACK;
@@ -133,8 +178,8 @@ public class SudokuGUI extends JFrame {
 
   
   
-  // 2D array of buttons; each sudoku square is a button
-  private HButton[][] buttons = new HButton[numRows][numCols];
+  // 2D array of buttons; each sudoku square is a button. Filled in by buildBoard().
+  private HButton[][] buttons = new HButton[0][0];
   
   /* Changes all square background colors to random colors. */
   private void disco() {
@@ -153,7 +198,7 @@ public class SudokuGUI extends JFrame {
   
   /* Checks if the game is over. If it is, starts a timer to repeatedly call the disco function. */
   private void checkIfGameOver() {
-    if(sudoku.gameOver())
+    if(sudoku.isSolved())
       discoTimer.start();
   }
   
@@ -170,16 +215,15 @@ public class SudokuGUI extends JFrame {
     }
 
     public void keyTyped(KeyEvent e) {
+      cancelAnalysis();
       unhighlightAll(); // Unhighlight all if you press a key
       char key = e.getKeyChar();
       //System.out.println(key);
-      if (Character.isDigit(key)) {
-        // use ascii values to convert chars to ints
-        int digit = key - '0';
+      int digit = Sudoku.valueOf(key, sudoku.getSize());
+      if (digit >= 0 && digit <= sudoku.getSize()) {
         if (currentRow == row && currentCol == col) {
-          Collection<SudokuSquare> s = sudoku.set(row, col, digit);
-          if(enableIllegalHighlighting) {
-            highlightList(s); // Highlight all squares that make it illegal to put in that position.
+          if(!journal.set(row, col, digit, violations) && enableIllegalHighlighting) {
+            highlightList(violations); // Highlight all squares that make it illegal to put in that position.
           }
         }
         checkIfGameOver();
@@ -197,7 +241,7 @@ public class SudokuGUI extends JFrame {
         public SelectionListener() {} // TODO: Make keyboard-driven selection as well.
         @Override
         public void actionPerformed(ActionEvent e) {
-          sudoku.set(row, col, val); // Set the value at its assigned position.
+          journal.set(row, col, val, violations); // Set the value at its assigned position.
           SudokuGUI.this.update(); // Call method of class many nested classes back (https://stackoverflow.com/a/2808514/16386050)
         }
       } // End of nested class
@@ -206,7 +250,7 @@ public class SudokuGUI extends JFrame {
       private static final long serialVersionUID = 1L;
       int val;
       SelectionItem(int val) {
-        super(""+val); 
+        super(Sudoku.symbolOf(val)); 
         this.val = val;
         addActionListener(new SelectionListener());
       }
@@ -239,17 +283,17 @@ public class SudokuGUI extends JFrame {
     
     @Override
     public void actionPerformed(ActionEvent e) {
+      if(!isInSuperSwapMode)
+        cancelAnalysis(); // In Super Swap the click is the end of the press that started the scan
       unhighlightAll(); // Unhighlight all if you click another button
       //System.out.printf("row %d, col %d, %s\n", row, col, e);
       JButton button = (JButton)e.getSource();
 
       if (row == currentRow && col == currentCol) {
-        currentRow = -1;
-        currentCol = -1;
+        select(-1, -1);
       } else if (sudoku.isBlank(row, col)) {
         // we can try to enter a value in a 
-        currentRow = row;
-        currentCol = col;
+        select(row, col);
 
         // TODO: Make this able to be toggled off and on from a menu
         // TODO: figure out some way that users can enter values
@@ -258,8 +302,12 @@ public class SudokuGUI extends JFrame {
         // or pop up a selector with only the legal valuess
         //SelectionMenu sMenu = new SelectionMenu(sudoku);
         if(enableLegalValuesOnly) {
-          selectFrom(sudoku.getLegalValues(row, col), button); // Select from possible values.
+          // Select from possible values, once they are worked out.
           // (By its very definition, there will be no need to highlight illegal values)
+          analyze(board -> valuesOf(board.getLegalValuesMask(row, col)), values -> {
+            if(currentRow == row && currentCol == col)
+              selectFrom(values, button);
+          });
         }
         //System.out.println(selectFrom(sudoku.getLegalValues(row, col), button));
       } else {
@@ -287,15 +335,26 @@ public class SudokuGUI extends JFrame {
     buttons[row][col].setHighlighted(highlighted);
   }
   
-  /* A convienence function to highlight a collection of SudokuSquares */
-  private void highlightList(Collection<SudokuSquare> list) {
-    for(SudokuSquare square : list) {
-      setHighlighted(square.row, square.col, true);
+  /* A convienence function to highlight a set of squares */
+  private void highlightList(SquareSet squares) {
+    for(int i = squares.first(); i >= 0; i = squares.next(i + 1)) {
+      setHighlighted(squares.rowOf(i), squares.colOf(i), true);
     }
   }
   
-  /* A convienence function to unhighlight all SudokuSquares */
+  /* Moves the square we are putting values into, or takes it away with (-1, -1) */
+  private void select(int row, int col) {
+    if(currentRow >= 0)
+      dirty.add(currentRow, currentCol);
+    currentRow = row;
+    currentCol = col;
+    if(row >= 0)
+      dirty.add(row, col);
+  }
+  
+  /* A convienence function to unhighlight all SudokuSquares. Also takes the last hint out of the title. */
   private void unhighlightAll() {
+    setTitle(TITLE);
     for(HButton[] row : buttons) {
       for(HButton button : row) {
         button.setHighlighted(false);
@@ -303,10 +362,48 @@ public class SudokuGUI extends JFrame {
     }
   }
 
+  /* Works out something from a snapshot of the board on the analysis thread, then hands it to
+   * onResult back on the event thread. Whatever was running before is cancelled. The result is
+   * thrown away if the board changed in the meantime, or something else was started or cancelled. */
+  private <T> void analyze(Function<BoardSnapshot, T> work, Consumer<T> onResult) {
+    cancelAnalysis();
+    int id = analysisCount;
+    long version = sudoku.getVersion();
+    BoardSnapshot board = sudoku.snapshot();
+    pendingAnalysis = analysis.submit(() -> {
+      T result = work.apply(board);
+      if(Thread.currentThread().isInterrupted())
+        return; // Cancelled, so nobody wants it
+      SwingUtilities.invokeLater(() -> {
+        if(id != analysisCount || version != sudoku.getVersion())
+          return; // Out of date
+        pendingAnalysis = null;
+        onResult.accept(result);
+      });
+    });
+  }
+  
+  /* Stops the analysis that is running, if there is one, and makes sure its result is never used */
+  private void cancelAnalysis() {
+    ++analysisCount;
+    if(pendingAnalysis != null) {
+      pendingAnalysis.cancel(true);
+      pendingAnalysis = null;
+    }
+  }
+  
+  /* The values in a mask, smallest first */
+  private static List<Integer> valuesOf(long mask) {
+    List<Integer> values = new ArrayList<Integer>(Long.bitCount(mask));
+    for(; mask != 0; mask &= mask - 1)
+      values.add(Long.numberOfTrailingZeros(mask) + 1);
+    return values;
+  }
+
   /* Locates an HButton on the board, or null if it doesn't exist. */
   private Point locateButton(HButton button) {
-    for(int c = 0; c < 9; ++c) {
-      for(int r = 0; r < 9; ++r) {
+    for(int c = 0; c < numCols; ++c) {
+      for(int r = 0; r < numRows; ++r) {
         if(buttons[r][c] == button) {
           return new Point(c,r);
         }
@@ -318,6 +415,8 @@ public class SudokuGUI extends JFrame {
   /* A special JButton that contains data for making it highlightable, among some other cool stuff... */
   private class HButton extends JButton implements MouseListener, MouseMotionListener, DropTargetListener {
     private static final long serialVersionUID = 1L;
+    private final int row;
+    private final int col;
     private boolean isHighlighted;
     public Color highlightColor;
     private int wiggleSpeed;
@@ -325,12 +424,13 @@ public class SudokuGUI extends JFrame {
     private Timer wiggleTimer;
     private float wiggleIndex;
     private Point dragStart;
-    Collection<SudokuSquare> legalValuesForSwap;
-    HButton() {
+    final SquareSet legalValuesForSwap = sudoku.newSquareSet();
+    HButton(int row, int col) {
       super();
+      this.row = row;
+      this.col = col;
       isHighlighted = false;
       dragStart = new Point(0,0);
-      legalValuesForSwap = null;
       highlightColor = Color.RED;
       wiggleSpeed = ThreadLocalRandom.current().nextInt(8,14); // Some will rotate faster / slower
       wiggleVariation = (float) (ThreadLocalRandom.current().nextFloat()/2+4.5); // The speed at which it will appear to start/stop wiggling slightly
@@ -348,16 +448,22 @@ public class SudokuGUI extends JFrame {
     }
     
     // To share data with a tile you are swapping with...
-    public Collection<SudokuSquare> readLegalValuesOnDrag() {return legalValuesForSwap;}
-    public void clearLegalValuesOnDrag() {legalValuesForSwap = null;}
+    public SquareSet readLegalValuesOnDrag() {return legalValuesForSwap;}
+    public void clearLegalValuesOnDrag() {legalValuesForSwap.clear();}
     
+    /* Takes effect on the next update() */
     public void setHighlighted(boolean highlighted) {
+      if(highlighted == isHighlighted)
+        return;
       isHighlighted = highlighted;
+      dirty.add(row, col);
     }
 
+    /* Shows straight away if it is highlighted, otherwise it is kept for when it is */
     public void setHighlightColor(Color c) {
       highlightColor = c;
-      setBackground(c);
+      if(isHighlighted)
+        setBackground(c);
     }
 
     public void enableWiggleMode() {
@@ -385,28 +491,28 @@ public class SudokuGUI extends JFrame {
     
     @Override public void mousePressed(MouseEvent e) {
       if(wiggleIndex != 0) { // Only if in wiggle mode
-      Point p = locateButton(this); // Where am I?
-      if(p == null)
-        return;
-      currentRow = p.y; // Set cursor position
-      currentCol = p.x;
+      select(row, col); // Set cursor position
       dragStart = getLocation();
       
-      // Temporary remove this value to calculate legal positions.
-      int tempValue = sudoku.get(currentRow, currentCol);
-      sudoku.force(currentRow, currentCol, 0);
-      // Highlight all legal positions
-      legalValuesForSwap = sudoku.getAllLegalPositions(tempValue);
-      for(SudokuSquare square : legalValuesForSwap) {
-        HButton button = buttons[square.row][square.col];
-        button.setHighlightColor(Color.GREEN);
-        button.setHighlighted(true);
-      }
-      // Put this value back
-      sudoku.force(currentRow, currentCol, tempValue);
-      
-      setHighlightColor(Color.YELLOW);
+      // Work out the legal positions on a copy of the board without this value, so the real one
+      // is never touched. Until they come back, nothing can be dropped here.
+      int tempValue = sudoku.get(row, col);
+      legalValuesForSwap.clear();
+      analyze(board -> board.with(row, col, 0).getAllLegalPositions(tempValue, new SquareSet(board.getSize())),
+          positions -> {
+        // Highlight all legal positions
+        legalValuesForSwap.set(positions);
+        for(int i = positions.first(); i >= 0; i = positions.next(i + 1)) {
+          HButton button = buttons[positions.rowOf(i)][positions.colOf(i)];
+          button.setHighlighted(true);
+          button.setHighlightColor(Color.GREEN);
+        }
+        SudokuGUI.this.update();
+      });
+
       setHighlighted(true);
+      setHighlightColor(Color.YELLOW);
+      SudokuGUI.this.update();
       }
     }
     @Override public void mouseMoved(MouseEvent e) {}
@@ -441,7 +547,7 @@ public class SudokuGUI extends JFrame {
       int thisCol = p.x;
       HButton dragged = buttons[currentRow][currentCol];
       // Make sure that this is one of the values that the dragger intended to swap with...
-      if(! doesCollectionContain(dragged.readLegalValuesOnDrag(), new SudokuSquare(thisRow, thisCol, sudoku.get(thisRow, thisCol)))) {
+      if(! dragged.readLegalValuesOnDrag().contains(thisRow, thisCol)) {
         dtde.rejectDrop();
         return;
       }
@@ -453,13 +559,11 @@ public class SudokuGUI extends JFrame {
         unhighlightAll();
         
         // Swap positions on board:
-        int temp = sudoku.get(currentRow, currentCol);
-        sudoku.force(currentRow, currentCol, sudoku.get(thisRow, thisCol));
-        sudoku.force(thisRow, thisCol, temp);
+        journal.swap(currentRow, currentCol, thisRow, thisCol);
         
         // Turn off wiggle mode.
-        for(int c = 0; c < 9; ++c) {
-          for(int r = 0; r < 9; ++r) {
+        for(int c = 0; c < numCols; ++c) {
+          for(int r = 0; r < numRows; ++r) {
             buttons[r][c].disableWiggleMode();
           }
         }
@@ -478,84 +582,47 @@ public class SudokuGUI extends JFrame {
         dtde.rejectDrop();
       }
     }
-    
-    // A dumb collection.contains() alternative...
-    public boolean doesCollectionContain(Collection<SudokuSquare> squares, SudokuSquare square) {
-      orf: // Wow, appearently the HashSet.contains() method is really, really stupid so I have to do 
-        // the exact same thing in the stupidest way possible...
-      if(squares != null) {
-        for(SudokuSquare sq : squares) {
-          if(sq.equals(square))
-            break orf;
-        }
-        return false;
-      } else {
-        return false;
-      }
-      return true;
-    }
   }
   
   
   /**
    * This is a private helper method that updates the GUI/view
-   * to match any changes to the model
+   * to match any changes to the model. Only the dirty squares are
+   * looked at, and each button repaints itself if it changed.
    */
   private void update() {
-    for (int row=0; row<numRows; row++) {
-      for (int col=0; col<numCols; col++) {
-        // Handle the highlighting of buttons
+    for(int i = dirty.first(); i >= 0; i = dirty.next(i + 1)) {
+      int row = dirty.rowOf(i);
+      int col = dirty.colOf(i);
+      // Handle the highlighting of buttons
+      
+      if (row == currentRow && col == currentCol && sudoku.isBlank(row, col)) {
+        // draw this grid square special!
+        // this is the grid square we are trying to enter value into
+        buttons[row][col].setForeground(Color.RED);
+        // I can't figure out how to change the background color of a grid square, ugh
+        // Maybe I should have used JLabel instead of JButton?
+        buttons[row][col].setBackground(Color.CYAN);
+        setText(row, col, "_");
+      } else if(buttons[row][col].isHighlighted) {
+        buttons[row][col].setHighlightColor(buttons[row][col].highlightColor);
+      } else {
+        buttons[row][col].setBackground(BACKGROUND_COLOR);
         
-        if (row == currentRow && col == currentCol && sudoku.isBlank(row, col)) {
-          // draw this grid square special!
-          // this is the grid square we are trying to enter value into
-          buttons[row][col].setForeground(Color.RED);
-          // I can't figure out how to change the background color of a grid square, ugh
-          // Maybe I should have used JLabel instead of JButton?
-          buttons[row][col].setBackground(Color.CYAN);
-          setText(row, col, "_");
-        } else if(buttons[row][col].isHighlighted) {
-          buttons[row][col].setHighlightColor(buttons[row][col].highlightColor);
+        buttons[row][col].setForeground(FONT_COLOR);
+        int val = sudoku.get(row, col);
+        if (val == 0) {
+          setText(row, col, "");
         } else {
-          buttons[row][col].setBackground(BACKGROUND_COLOR);
-          
-          buttons[row][col].setForeground(FONT_COLOR);
-          int val = sudoku.get(row, col);
-          if (val == 0) {
-            setText(row, col, "");
-          } else {
-            setText(row, col, val+"");
-          }
+          setText(row, col, Sudoku.symbolOf(val));
         }
       }
     }
-    repaint();
+    dirty.clear();
   }
   
   
   
-  /* Retrieves an extended attribute (not filesystem-based) from the given sudoku save file path */ 
-  private String getExtAttr(String path, String key) throws IOException, NoSuchElementException {
-    Path p = Paths.get(path, "");
-    String data = Files.readString(p);
-    String attrs;
-    try {
-      attrs = data.split("EXT:")[1];
-    } catch(ArrayIndexOutOfBoundsException e) {
-      throw new NoSuchElementException("File does not contain extended attributes.");
-    }
-    String entries[] = attrs.split(","); // Comma delimited
-    for(String entry : entries) {
-      String pair[] = entry.split(":");
-      if(pair[0].equals(key)) {
-        return pair[1];
-      }
-    }
-    throw new NoSuchElementException("No specified key was found in the extended attributes list");
-  }
-    
-  
-  
   private void createMenuBar() {
     menuBar = new JMenuBar();
 
@@ -568,7 +635,11 @@ public class SudokuGUI extends JFrame {
     addToMenu(file, "New Game", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        sudoku.load("easy1.txt");
+        boolean resized = sudoku.getSize() != 9; // The generator only makes 9x9 puzzles
+        sudoku.load(generator.generate(PuzzleGenerator.Difficulty.MEDIUM, newPuzzle));
+        journal.clear();
+        if(resized)
+          buildBoard();
         discoTimer.stop(); // Power down the disco machine
         unhighlightAll();
         for(HButton[] row : buttons) {
@@ -577,6 +648,8 @@ public class SudokuGUI extends JFrame {
           }
         }
         swapsRemaining = 2;
+        elapsedBefore = 0;
+        playStart = System.currentTimeMillis();
         repaint();
         update();
       }
@@ -586,16 +659,19 @@ public class SudokuGUI extends JFrame {
       @Override
       public void actionPerformed(ActionEvent e) { // Save to a file
         sharedFileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("Plain text", "txt");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("Sudoku save", "sudoku");
         sharedFileChooser.setFileFilter(filter);
         if(sharedFileChooser.showSaveDialog(file) == JFileChooser.APPROVE_OPTION) {
           String path = sharedFileChooser.getSelectedFile().getAbsolutePath();
-          if(path.lastIndexOf(".txt") == -1) { // Correct as .txt file.
-            path = path + ".txt";
+          if(!path.endsWith(".sudoku")) { // Correct as .sudoku file.
+            path = path + ".sudoku";
           }
           // Be sure to also save the number of swaps remaining, so a user cannot simply save, close,
           // reopen, and load the game to refresh the count.
-          Util.writeToFile(path, sudoku.toSaveString() + "EXT:swaps:" + swapsRemaining);
+          new SaveFile(sudoku)
+              .set(SaveFile.SWAPS_REMAINING, swapsRemaining)
+              .set(SaveFile.ELAPSED_MILLIS, elapsedBefore + System.currentTimeMillis() - playStart)
+              .write(path);
         }
         
         repaint();
@@ -609,17 +685,20 @@ public class SudokuGUI extends JFrame {
       @Override
       public void actionPerformed(ActionEvent e) {
         sharedFileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("Plain text", "txt");
+        // Old games were saved as text, and those still load
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("Sudoku save or plain text", "sudoku", "txt");
         sharedFileChooser.setFileFilter(filter);
         if(sharedFileChooser.showOpenDialog(file) == JFileChooser.APPROVE_OPTION) {
           String path = sharedFileChooser.getSelectedFile().getAbsolutePath();
-          sudoku.load(path);
-          // Read swapsRemaining
-          try {
-            swapsRemaining = Integer.parseInt( getExtAttr(path, "swaps") );
-          } catch (NumberFormatException | NoSuchElementException | IOException e1) {
-            swapsRemaining = 2;
-          }
+          int oldSize = sudoku.getSize();
+          SaveFile save = SaveFile.read(path);
+          save.applyTo(sudoku);
+          journal.clear();
+          if(sudoku.getSize() != oldSize)
+            buildBoard();
+          swapsRemaining = (int) save.get(SaveFile.SWAPS_REMAINING, 2);
+          elapsedBefore = save.get(SaveFile.ELAPSED_MILLIS, 0);
+          playStart = System.currentTimeMillis();
           superSwapButton.setText("Activate Super Swap! (" + swapsRemaining + " remaining)");
         }
         repaint();
@@ -628,6 +707,37 @@ public class SudokuGUI extends JFrame {
     });
 
     
+    //
+    // Edit menu
+    //
+    JMenu edit = new JMenu("Edit");
+    menuBar.add(edit);
+    
+    addToMenu(edit, "Undo", new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        if(journal.undo())
+          afterJournalMove();
+      }
+    }).setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+    
+    addToMenu(edit, "Redo", new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        if(journal.redo())
+          afterJournalMove();
+      }
+    }).setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+    
+    /* Undoes everything back to the start of the puzzle. Redo still works after it. */
+    addToMenu(edit, "Restart", new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        journal.jumpTo(0);
+        afterJournalMove();
+      }
+    });
+    
     JMenu view = new JMenu("View");
     menuBar.add(view);
     /* Toggle for a menu of only legal values upon click */
@@ -670,22 +780,18 @@ public class SudokuGUI extends JFrame {
       @Override
       public void actionPerformed(ActionEvent e) {
         unhighlightAll();
-        Collection<SudokuSquare> list = sudoku.getMostContrainedSquares();
-        if(list.size() == 0) {
-          // Leaving this up to the user will give a more "natural" feel.
-          // The user will eventually give up and press the hint button, only to find that
-          // there are no more moves left. This is also a rather heavy-weight function
-          // to be called often.
-          JOptionPane.showMessageDialog(null, "No more moves left!");
-          return;
-        }
-        // Randomly choose from all the equally viable hints...
-        // Help from https://stackoverflow.com/a/363692/16386050
-        // Note the "+1" is implicitly included because size = max array offset + 1
-        int choice = ThreadLocalRandom.current().nextInt(0, list.size()); 
-        SudokuSquare sq = (SudokuSquare) list.toArray()[choice];
-        buttons[sq.row][sq.col].setHighlighted(true);
-        update();
+        analyze(board -> findHint(board), hint -> {
+          if(hint == null) {
+            // Leaving this up to the user will give a more "natural" feel.
+            // The user will eventually give up and press the hint button, only to find that
+            // there are no more moves left.
+            JOptionPane.showMessageDialog(null, "No more moves left!");
+            return;
+          }
+          setTitle(TITLE + " Hint: " + hint.description);
+          buttons[hint.row][hint.col].setHighlighted(true);
+          update();
+        });
       }
     });
 
@@ -704,8 +810,8 @@ public class SudokuGUI extends JFrame {
           --swapsRemaining;
         superSwapButton.setText("Activate Super Swap! (" + swapsRemaining + " remaining)");
         // Start wiggling all non-empty buttons...
-        for(int c = 0; c < 9; ++c) {
-          for(int r = 0; r < 9; ++r) {
+        for(int c = 0; c < numCols; ++c) {
+          for(int r = 0; r < numRows; ++r) {
             if(! sudoku.isBlank(r, c)) {
               buttons[r][c].enableWiggleMode();
             }
@@ -725,11 +831,71 @@ public class SudokuGUI extends JFrame {
    * @param menu
    * @param title
    * @param listener
+   * @return the new menu item
    */
-  private void addToMenu(JMenu menu, String title, ActionListener listener) {
+  private JMenuItem addToMenu(JMenu menu, String title, ActionListener listener) {
     JMenuItem menuItem = new JMenuItem(title);
     menu.add(menuItem);
     menuItem.addActionListener(listener);
+    return menuItem;
+  }
+  
+  /* A square to look at, and why */
+  private static class Hint {
+    final int row;
+    final int col;
+    final String description;
+
+    Hint(int row, int col, String description) {
+      this.row = row;
+      this.col = col;
+      this.description = description;
+    }
+  }
+  
+  /* Works out a hint on the analysis thread. Returns null if the board has no empty squares left. */
+  private Hint findHint(BoardSnapshot board) {
+    // Only the squares that changed since the last hint are updated, so the deduction engine keeps
+    // what it worked out last time.
+    hintBoard.update(board.copyTo(new int[board.getSize() * board.getSize()]));
+    // Cross off whatever candidates it can until it gets to a square it can fill in. The
+    // eliminations stick, so the next hint doesn't have to find them again.
+    String techniques = "";
+    DeductionEngine.Step step;
+    while((step = deductions.nextStep()) != null && !step.isPlacement()) {
+      if(Thread.currentThread().isInterrupted())
+        return null; // Cancelled
+      if(!techniques.contains(step.getTechnique().toString()))
+        techniques += step.getTechnique() + ", ";
+      deductions.apply(step);
+    }
+    if(step != null)
+      return new Hint(step.getRow(), step.getCol(), techniques + step.getTechnique());
+    
+    // Nothing it knows works here, so just point out a square with the fewest choices
+    SquareSet squares = hintBoard.getMostContrainedSquares(hintBoard.newSquareSet());
+    if(squares.isEmpty())
+      return null;
+    // Randomly choose from all the equally viable hints...
+    // Help from https://stackoverflow.com/a/363692/16386050
+    // Note the "+1" is implicitly included because size = max array offset + 1
+    int sq = squares.get(ThreadLocalRandom.current().nextInt(0, squares.size()));
+    return new Hint(squares.rowOf(sq), squares.colOf(sq), "most constrained square");
+  }
+  
+  /* Redraws the board after an undo or redo. Stops the disco if it took back the winning move. */
+  private void afterJournalMove() {
+    unhighlightAll();
+    if(!sudoku.isSolved()) {
+      discoTimer.stop();
+      for(HButton[] row : buttons) {
+        for(HButton button : row) {
+          button.setHighlightColor(Color.RED);
+        }
+      }
+    }
+    update();
+    checkIfGameOver();
   }
 
   private void createMouseHandler() {
@@ -785,56 +951,68 @@ public class SudokuGUI extends JFrame {
      */
   }
 
-  public SudokuGUI() {
-    sudoku = new Sudoku();
-    // load a puzzle from a text file
-    // right now we only have 1 puzzle, but we could always add more!
-    sudoku.load("easy1.txt");
-
-    setTitle("Sudoku!");
-
-    this.setSize(width, height);
+  /* (Re)makes a button for every square, sized to fit the current board. Called again whenever a board
+   * of a different size is loaded. */
+  private void buildBoard() {
+    numRows = sudoku.getSize();
+    numCols = sudoku.getSize();
+    int boxSize = sudoku.getBoxSize();
+    squareSize = Math.max(BOARD_SIZE / numCols, 30);
+    width = DOUBLE_MARGIN_SIZE + squareSize * numCols;
+    height = DOUBLE_MARGIN_SIZE + squareSize * numRows;
+    Font font = FONT.deriveFont(FONT.getSize2D() * squareSize / 90);
+    violations = sudoku.newSquareSet();
+    dirty = sudoku.newSquareSet();
+    dirty.fill(); // Every button is new
+    currentRow = -1;
+    currentCol = -1;
+    isInSuperSwapMode = false;
 
-    // the JPanel where everything gets painted
-    panel = new JPanel();
-    // set up a 9x9 grid layout, since sudoku boards are 9x9
-    panel.setLayout(new GridLayout(9, 9));
+    for(HButton[] row : buttons) {
+      for(HButton button : row) {
+        button.disableWiggleMode(); // Otherwise its timer keeps going
+      }
+    }
+    panel.removeAll();
+    // set up a grid layout as big as the board, 9x9 for a normal sudoku
+    panel.setLayout(new GridLayout(numRows, numCols));
     // set the preferred size
     // If we don't do this, often the window will be minimized
     // This is a weird quirk of Java GUIs
     panel.setPreferredSize(new Dimension(width, height));
 
-    // This sets up 81 JButtons (9 rows * 9 columns)
+    // This sets up 81 JButtons (9 rows * 9 columns) on a normal board
+    buttons = new HButton[numRows][numCols];
     for (int r=0; r<numRows; r++) {
       for (int c=0; c<numCols; c++) {
-        HButton b = new HButton();
+        HButton b = new HButton(r, c);
         b.setPreferredSize(new Dimension(squareSize, squareSize));
 
-        b.setFont(FONT);
+        b.setFont(font);
         b.setForeground(FONT_COLOR);
         b.setBackground(BUTTON_COLOR);
         buttons[r][c] = b;
         // add the button to the canvas
-        // the layout manager (the 9x9 GridLayout from a few lines earlier)
-        // will make sure we get a 9x9 grid of these buttons
+        // the layout manager (the GridLayout from a few lines earlier)
+        // will make sure we get a grid of these buttons
         panel.add(b);
 
         // thicker borders in some places
-        // sudoku boards use 3x3 sub-grids
+        // sudoku boards use sub-grids (3x3 on a normal board)
         int top = 1;
         int left = 1;
         int right = 1;
         int bottom = 1;
-        if (r % 3 == 2) {
+        if (r % boxSize == boxSize - 1) {
           bottom = 5;
         }
-        if (c % 3 == 2) {
+        if (c % boxSize == boxSize - 1) {
           right = 5;
         }
         if (r == 0) {
           top = 5;
         }
-        if (c == 9) {
+        if (c == numCols) {
           bottom = 5;
         }
         b.setBorder(BorderFactory.createMatteBorder(top, left, bottom, right, Color.black));
@@ -847,16 +1025,45 @@ public class SudokuGUI extends JFrame {
         b.addActionListener(new ButtonListener(r, c, sudoku));
       }
     }
+    createKeyboardHandlers();
 
-    this.getContentPane().add(panel, BorderLayout.CENTER);
     this.setPreferredSize(new Dimension(width, height));
-    this.setResizable(true);
+    panel.revalidate();
     this.pack();
+  }
+
+  public SudokuGUI() {
+    sudoku = new Sudoku();
+    // load a puzzle from a text file
+    // right now we only have 1 puzzle, but we could always add more!
+    sudoku.load("easy1.txt");
+    // Keep track of the squares that change, whoever changes them
+    sudoku.addChangeListener(new Sudoku.ChangeListener() {
+      @Override
+      public void squareChanged(int row, int col) {
+        if(dirty.getSize() == sudoku.getSize())
+          dirty.add(row, col);
+      }
+      
+      @Override
+      public void boardCleared() {
+        dirty.fill(); // If the size changed, buildBoard() makes a new one anyway
+      }
+    });
+    journal = new MoveJournal(sudoku);
+
+    setTitle(TITLE);
+
+    // the JPanel where everything gets painted
+    panel = new JPanel();
+    this.getContentPane().add(panel, BorderLayout.CENTER);
+    buildBoard();
+
+    this.setResizable(true);
     this.setLocation(100,100);
     this.setFocusable(true);
 
     createMenuBar();
-    createKeyboardHandlers();
     createMouseHandler();
 
     // close the GUI application when people click the X to close the window
@@ -0,0 +1,327 @@
+package knox.sudoku;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/* Runs the solvers behind a small HTTP server on the loopback interface, without the GUI.
+ *
+ * Every endpoint takes a POST whose body is one or more 9x9 puzzles, one per line, 81 characters in
+ * row-major order with '0' or '.' for blanks. Blank lines are skipped. The response is text with one
+ * line for every puzzle, in the same order:
+ *   /solve     the 81-digit solution, or 81 zeroes if there isn't one (like BatchSolver)
+ *   /validate  "valid" if nothing on the board breaks the rules, otherwise "invalid"
+ *   /count     the number of solutions, stopping at ?cap=n (1000 if it isn't given, and never
+ *              more than MAX_CAP)
+ *   /hint      "row col value technique" for the next value a person could work out, or "none"
+ * A line that isn't a puzzle gets "malformed" back (81 zeroes for /solve). A request that is still
+ * working after deadlineMillis has its solver cancelled and gets a 503, so one nasty /count can't
+ * hold on to a worker for good.
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21 and up) and on a pool of ordinary
+ * threads otherwise. At most maxRequests are let in at once; the rest get a 503 straight away, so a
+ * burst can't pile up without limit. A request only asks to be let in once its whole body has
+ * arrived, so a slow upload doesn't hold a place. The solver, board and deduction engine a request
+ * uses come from a pool and go back when it is done, so nothing big is made per request, and there
+ * are never more of them than requests that can be in at once.
+ *
+ * Usage: SudokuServer [-port n] [-max-requests n] [-deadline ms] */
+public class SudokuServer {
+  private static final int CELLS = 81;
+  private static final int MAX_BATCH = 10000; // Puzzles in one request
+  private static final int MAX_BODY = MAX_BATCH * (CELLS + 2); // Room for "\r\n" after each one
+  private static final int DEFAULT_CAP = 1000;
+  public static final int MAX_CAP = 1000000;
+  public static final int DEFAULT_PORT = 8080;
+  public static final int DEFAULT_MAX_REQUESTS = 1024;
+  public static final int DEFAULT_DEADLINE_MILLIS = 10000;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService deadlines;
+  private final int deadlineMillis;
+  private final Semaphore permits;
+  private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<Worker>();
+
+  /* Everything one request needs to do its work, reused from request to request */
+  private static class Worker {
+    final BitboardSolver solver = new BitboardSolver();
+    final Sudoku sudoku = new Sudoku();
+    final DeductionEngine engine = new DeductionEngine(sudoku);
+    final int[] board = new int[CELLS];
+    // Set when the request runs past its deadline. Every request gets a new one, so a late timer
+    // can't cancel whichever request has the worker next.
+    AtomicBoolean cancel;
+  }
+
+  /* What an endpoint does to each puzzle. Appends its line to out, without the '\n'. */
+  private interface Endpoint {
+    void handle(Worker worker, boolean wellFormed, URI uri, StringBuilder out);
+  }
+
+  public SudokuServer(int port, int maxRequests) throws IOException {
+    this(port, maxRequests, DEFAULT_DEADLINE_MILLIS);
+  }
+
+  /* A server on the given port of the loopback interface (0 picks a free one). Call start() to let
+   * requests in. */
+  public SudokuServer(int port, int maxRequests, int deadlineMillis) throws IOException {
+    if(maxRequests < 1) {
+      throw new IllegalArgumentException("The server has to let at least one request in");
+    }
+    if(deadlineMillis < 1) {
+      throw new IllegalArgumentException("The deadline has to be at least 1 ms");
+    }
+    this.deadlineMillis = deadlineMillis;
+    permits = new Semaphore(maxRequests);
+    executor = newExecutor();
+    deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "sudoku-server-deadlines");
+      t.setDaemon(true);
+      return t;
+    });
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxRequests);
+    server.setExecutor(executor);
+    server.createContext("/solve", exchange -> serve(exchange, this::solve));
+    server.createContext("/validate", exchange -> serve(exchange, this::validate));
+    server.createContext("/count", exchange -> serve(exchange, this::count));
+    server.createContext("/hint", exchange -> serve(exchange, this::hint));
+  }
+
+  /* One virtual thread per request if this JVM has them. Looked up by reflection so this still
+   * compiles and runs on 17. */
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch(ReflectiveOperationException e) {
+      // The permits keep the number of busy threads down, and idle ones die off after a minute
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "sudoku-server");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /* Stops taking requests, waiting up to the given number of seconds for the ones in progress */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdown();
+    deadlines.shutdownNow();
+  }
+
+  /* The port it is listening on, which is only interesting if it was made with port 0 */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void serve(HttpExchange exchange, Endpoint endpoint) throws IOException {
+    try {
+      if(!exchange.getRequestMethod().equals("POST")) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        reply(exchange, 405, "Send the puzzles in the body of a POST\n");
+        return;
+      }
+      // The body is read before taking a permit, so a slow upload doesn't keep one from a request
+      // that is ready to go
+      byte[] body = readBody(exchange.getRequestBody());
+      if(body == null) {
+        reply(exchange, 413, "At most " + MAX_BATCH + " puzzles per request\n");
+        return;
+      }
+      if(!permits.tryAcquire()) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        reply(exchange, 503, "Too many requests\n");
+        return;
+      }
+      Worker worker = idle.poll();
+      try {
+        if(worker == null)
+          worker = new Worker();
+        AtomicBoolean cancel = new AtomicBoolean();
+        worker.cancel = cancel;
+        worker.solver.setCancelFlag(cancel);
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> cancel.set(true), deadlineMillis, TimeUnit.MILLISECONDS);
+        String result;
+        try {
+          result = run(worker, body, exchange.getRequestURI(), endpoint);
+        } finally {
+          deadline.cancel(false);
+        }
+        if(result == null) {
+          reply(exchange, 503, "Took longer than the " + deadlineMillis + " ms deadline\n");
+          return;
+        }
+        reply(exchange, 200, result);
+      } finally {
+        if(worker != null)
+          idle.offer(worker);
+        permits.release();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /* The whole body, or null if it is too big */
+  private static byte[] readBody(InputStream in) throws IOException {
+    byte[] body = in.readNBytes(MAX_BODY + 1);
+    return body.length > MAX_BODY ? null : body;
+  }
+
+  /* Runs the endpoint on every line of the body. Returns null if it ran past the deadline. */
+  private static String run(Worker worker, byte[] body, URI uri, Endpoint endpoint) {
+    StringBuilder out = new StringBuilder(body.length + 16);
+    int start = 0;
+    while(start < body.length) {
+      if(worker.cancel.get())
+        return null;
+      int end = start;
+      while(end < body.length && body[end] != '\n')
+        ++end;
+      int last = end;
+      while(last > start && (body[last - 1] == '\r' || body[last - 1] == ' ' || body[last - 1] == '\t'))
+        --last;
+      if(last > start) {
+        endpoint.handle(worker, parse(body, start, last, worker.board), uri, out);
+        out.append('\n');
+      }
+      start = end + 1;
+    }
+    // The last puzzle may have been cut short too
+    return worker.cancel.get() ? null : out.toString();
+  }
+
+  /* Reads one puzzle line into board. Returns false if it isn't one. */
+  private static boolean parse(byte[] body, int start, int end, int[] board) {
+    if(end - start != CELLS)
+      return false;
+    for(int i = 0; i < CELLS; ++i) {
+      int ch = body[start + i];
+      if(ch == '.')
+        board[i] = 0;
+      else if(ch >= '0' && ch <= '9')
+        board[i] = ch - '0';
+      else
+        return false;
+    }
+    return true;
+  }
+
+  private void solve(Worker worker, boolean wellFormed, URI uri, StringBuilder out) {
+    boolean ok = wellFormed && worker.solver.solve(worker.board);
+    for(int i = 0; i < CELLS; ++i)
+      out.append((char) (ok ? '0' + worker.board[i] : '0'));
+  }
+
+  private void validate(Worker worker, boolean wellFormed, URI uri, StringBuilder out) {
+    if(!wellFormed) {
+      out.append("malformed");
+      return;
+    }
+    worker.sudoku.load(worker.board);
+    out.append(worker.sudoku.getConflictCount() == 0 ? "valid" : "invalid");
+  }
+
+  private void count(Worker worker, boolean wellFormed, URI uri, StringBuilder out) {
+    if(!wellFormed) {
+      out.append("malformed");
+      return;
+    }
+    out.append(worker.solver.countSolutions(worker.board, capOf(uri)));
+  }
+
+  /* Works through eliminations until it gets to a value that can go in, like the GUI's hint */
+  private void hint(Worker worker, boolean wellFormed, URI uri, StringBuilder out) {
+    if(!wellFormed) {
+      out.append("malformed");
+      return;
+    }
+    worker.sudoku.load(worker.board);
+    DeductionEngine.Step step;
+    while((step = worker.engine.nextStep()) != null && !step.isPlacement()) {
+      if(worker.cancel.get())
+        return; // run() turns it into a 503
+      worker.engine.apply(step);
+    }
+    if(step == null) {
+      out.append("none");
+      return;
+    }
+    out.append(step.getRow()).append(' ').append(step.getCol()).append(' ').append(step.getValue())
+        .append(' ').append(step.getTechnique());
+  }
+
+  /* The cap=n of the query, if there is one, kept to MAX_CAP */
+  private static int capOf(URI uri) {
+    String query = uri.getRawQuery();
+    if(query != null) {
+      for(String param : query.split("&")) {
+        if(param.startsWith("cap=")) {
+          try {
+            return Math.max(1, Math.min(MAX_CAP, Integer.parseInt(param.substring(4))));
+          } catch(NumberFormatException e) {
+            break;
+          }
+        }
+      }
+    }
+    return DEFAULT_CAP;
+  }
+
+  private static void reply(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=us-ascii");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try(OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /* Responses are written as headers and then a body, and with Nagle's algorithm on the body waits
+   * for the client's delayed ACK, which adds about 40 ms to every request. The JDK's server only
+   * reads this property when it is first used, and it applies to every HttpServer in the JVM, so
+   * only a main should call this, before making a server. */
+  static void disableNagle() {
+    if(System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = DEFAULT_PORT;
+    int maxRequests = DEFAULT_MAX_REQUESTS;
+    int deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      switch(args[i]) {
+      case "-port": port = Integer.parseInt(args[i + 1]); break;
+      case "-max-requests": maxRequests = Integer.parseInt(args[i + 1]); break;
+      case "-deadline": deadlineMillis = Integer.parseInt(args[i + 1]); break;
+      default:
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+    disableNagle();
+    SudokuServer server = new SudokuServer(port, maxRequests, deadlineMillis);
+    server.start();
+    System.err.println("Listening on http://localhost:" + server.getPort() + "/ (solve, validate, count, hint)");
+  }
+}
@@ -0,0 +1,24 @@
+package knox.sudoku;
+
+/* Something that can solve a Sudoku board. Boards are passed as size*size ints (81 for a normal
+ * board) in row-major order with 0 for blanks (see Sudoku.copyTo and Sudoku.load(int[])). A solver
+ * only takes boards of the size it was made for.
+ *
+ * Solvers keep their working state between calls so they don't have to allocate anything per
+ * board, which also means they are not thread safe. Give every thread its own. */
+public interface SudokuSolver {
+  
+  /* Solves the board. If it has a solution, the blanks in cells are filled in and true is returned.
+   * Otherwise cells is left alone and false is returned. */
+  public boolean solve(int[] cells);
+  
+  /* Counts the solutions of the board, stopping as soon as it reaches limit, so countSolutions(cells, 2)
+   * is enough to tell if a puzzle has exactly one. cells is left alone. */
+  public int countSolutions(int[] cells, int limit);
+  
+  /* Number of values tried during the last solve */
+  public long getNodeCount();
+  
+  /* Number of values that were tried and had to be taken back during the last solve */
+  public long getBacktrackCount();
+}
@@ -1,5 +1,7 @@
 package knox.sudoku;
 
+import java.util.Objects;
+
 /* This class is purely for passing info between objects when needed. 
  * It describes the location and value of a square on the board. */
 public class SudokuSquare {
@@ -26,4 +28,9 @@ public class SudokuSquare {
     return this.row == s.row && this.col == s.col && this.value == s.value;
   }
   
+  @Override
+  public int hashCode() {
+    return Objects.hash(row, col, value);
+  }
+  
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package knox.sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/* Reads a SearchTrace and reports where the time went: how long puzzles took, the slowest ones
+ * (with their boards, if they were slow enough to have them written), and from the sampled
+ * branches, how the time splits up by search depth, how many candidates the branch cells had, and
+ * which cells were branched on the most.
+ *
+ * Usage: TraceSummary [-top n] trace */
+public class TraceSummary {
+  private final int size;
+  private final int sampleEvery;
+  private final int top;
+
+  private final Map<Integer, Recorder> recorders = new HashMap<Integer, Recorder>();
+  private final PriorityQueue<Puzzle> slowest; // Fastest of the slowest at the head
+  private final LatencyHistogram times = new LatencyHistogram();
+  private long puzzles;
+  private long solved;
+  private long cancelled;
+  private long totalNanos;
+  private long totalNodes;
+  private long totalBacktracks;
+  private long samples;
+  private long[] timeByDepth = new long[16]; // Index 0 is before the first sampled branch of a solve
+  private long[] samplesByDepth = new long[16];
+  private final long[] samplesByCandidates;
+  private final long[] samplesByCell;
+
+  /* One solve */
+  private static class Puzzle {
+    long number;
+    int clues;
+    long nanos;
+    long solutions;
+    long nodes;
+    long backtracks;
+    boolean cancelled;
+    int[] board;
+  }
+
+  /* Where each recorder is up to. Its records can be spread over any number of chunks. */
+  private static class Recorder {
+    Puzzle puzzle;
+    int depth; // Of the last record, as an index into timeByDepth
+  }
+
+  public TraceSummary(InputStream in, int top) throws IOException {
+    this.top = top;
+    slowest = new PriorityQueue<Puzzle>(Math.max(1, top), (a, b) -> Long.compare(a.nanos, b.nanos));
+    DataInputStream data = new DataInputStream(in);
+    byte[] magic = new byte[SearchTrace.MAGIC.length];
+    data.readFully(magic);
+    if(!Arrays.equals(magic, SearchTrace.MAGIC)) {
+      throw new IllegalArgumentException("Not a search trace");
+    }
+    int version = data.readUnsignedByte();
+    if(version != SearchTrace.VERSION) {
+      throw new IllegalArgumentException("Unknown trace version " + version);
+    }
+    int boxSize = data.readUnsignedByte();
+    size = boxSize * boxSize;
+    sampleEvery = (int) readVarint(data);
+    samplesByCandidates = new long[size + 1];
+    samplesByCell = new long[size * size];
+
+    byte[] chunk = new byte[0];
+    int tag;
+    while((tag = data.read()) >= 0) {
+      if(tag != SearchTrace.CHUNK) {
+        throw new IllegalArgumentException("Trace is corrupt: expected a chunk but got tag " + tag);
+      }
+      int id = (int) readVarint(data);
+      int length = (int) readVarint(data);
+      if(chunk.length < length)
+        chunk = new byte[length];
+      data.readFully(chunk, 0, length);
+      readChunk(recorders.computeIfAbsent(id, k -> new Recorder()), chunk, length);
+    }
+  }
+
+  private static long readVarint(DataInputStream in) throws IOException {
+    long value = 0;
+    for(int shift = 0; ; shift += 7) {
+      int b = in.read();
+      if(b < 0)
+        throw new EOFException("Trace ends in the middle of a number");
+      value |= (long) (b & 0x7F) << shift;
+      if((b & 0x80) == 0)
+        return value;
+    }
+  }
+
+  // Where readChunk is up to in the chunk
+  private int pos;
+
+  private long varint(byte[] buf) {
+    long value = 0;
+    for(int shift = 0; ; shift += 7) {
+      int b = buf[pos++];
+      value |= (long) (b & 0x7F) << shift;
+      if((b & 0x80) == 0)
+        return value;
+    }
+  }
+
+  private void readChunk(Recorder recorder, byte[] buf, int length) {
+    pos = 0;
+    while(pos < length) {
+      int tag = (int) varint(buf);
+      switch(tag) {
+      case SearchTrace.START:
+        recorder.puzzle = new Puzzle();
+        recorder.puzzle.number = varint(buf);
+        recorder.puzzle.clues = (int) varint(buf);
+        varint(buf); // When it started
+        recorder.depth = 0;
+        break;
+      case SearchTrace.BRANCH: {
+        long nanos = varint(buf);
+        int depth = (int) varint(buf) + 1;
+        int cell = (int) varint(buf);
+        int candidates = (int) varint(buf);
+        addTime(recorder, nanos);
+        if(depth >= samplesByDepth.length) {
+          timeByDepth = Arrays.copyOf(timeByDepth, depth * 2);
+          samplesByDepth = Arrays.copyOf(samplesByDepth, depth * 2);
+        }
+        ++samplesByDepth[depth];
+        ++samplesByCandidates[Math.min(candidates, size)];
+        ++samplesByCell[cell];
+        ++samples;
+        recorder.depth = depth;
+        break;
+      }
+      case SearchTrace.END: {
+        addTime(recorder, varint(buf));
+        Puzzle puzzle = recorder.puzzle;
+        if(puzzle == null) {
+          throw new IllegalArgumentException("Trace is corrupt: a solve ends without starting");
+        }
+        puzzle.solutions = varint(buf);
+        puzzle.nodes = varint(buf);
+        puzzle.backtracks = varint(buf);
+        int flags = (int) varint(buf);
+        puzzle.cancelled = (flags & SearchTrace.CANCELLED) != 0;
+        if((flags & SearchTrace.HAS_BOARD) != 0) {
+          puzzle.board = new int[size * size];
+          for(int i = 0; i < puzzle.board.length; ++i)
+            puzzle.board[i] = buf[pos++];
+        }
+        finish(puzzle);
+        recorder.puzzle = null;
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Trace is corrupt: unknown tag " + tag);
+      }
+    }
+  }
+
+  private void addTime(Recorder recorder, long nanos) {
+    if(recorder.puzzle != null)
+      recorder.puzzle.nanos += nanos;
+    timeByDepth[recorder.depth] += nanos;
+  }
+
+  private void finish(Puzzle puzzle) {
+    ++puzzles;
+    if(puzzle.cancelled)
+      ++cancelled;
+    else if(puzzle.solutions > 0)
+      ++solved;
+    totalNanos += puzzle.nanos;
+    totalNodes += puzzle.nodes;
+    totalBacktracks += puzzle.backtracks;
+    times.record(puzzle.nanos);
+    if(top > 0) {
+      if(slowest.size() < top) {
+        slowest.add(puzzle);
+      } else if(puzzle.nanos > slowest.peek().nanos) {
+        slowest.poll();
+        slowest.add(puzzle);
+      }
+    }
+  }
+
+  public void print() {
+    System.out.printf("%d puzzles (%d solved, %d cancelled) on %dx%d boards, one branch in %d sampled%n",
+        puzzles, solved, cancelled, size, size, sampleEvery);
+    if(puzzles == 0)
+      return;
+    System.out.printf("Time: %.3f ms total, mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+        totalNanos / 1e6, times.getMeanMicros(), times.getP50Micros(), times.getP99Micros(), times.getMaxMicros());
+    System.out.printf("Nodes: %d (%.1f per puzzle), backtracks: %d (%.1f per puzzle)%n",
+        totalNodes, (double) totalNodes / puzzles, totalBacktracks, (double) totalBacktracks / puzzles);
+
+    List<Puzzle> slow = new ArrayList<Puzzle>(slowest);
+    slow.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+    System.out.println();
+    System.out.println("Slowest puzzles:");
+    System.out.println("     puzzle  clues        us       nodes  backtracks");
+    for(Puzzle p : slow) {
+      System.out.printf("%11d  %5d  %8.1f  %10d  %10d%s%n", p.number, p.clues, p.nanos / 1e3, p.nodes,
+          p.backtracks, p.cancelled ? "  cancelled" : p.solutions == 0 ? "  no solution" : "");
+      if(p.board != null)
+        System.out.println("             " + boardString(p.board));
+    }
+
+    if(samples == 0)
+      return;
+    System.out.println();
+    System.out.println("Time by depth of the last sampled branch:");
+    System.out.println("  depth    % time   samples");
+    for(int d = 0; d < timeByDepth.length; ++d) {
+      if(timeByDepth[d] == 0 && samplesByDepth[d] == 0)
+        continue;
+      System.out.printf("  %5s  %7.2f%%  %8d%n", d == 0 ? "-" : String.valueOf(d - 1),
+          100.0 * timeByDepth[d] / totalNanos, samplesByDepth[d]);
+    }
+
+    System.out.println();
+    System.out.println("Candidates in the branch cell:");
+    for(int c = 0; c <= size; ++c) {
+      if(samplesByCandidates[c] > 0)
+        System.out.printf("  %5d  %7.2f%%%n", c, 100.0 * samplesByCandidates[c] / samples);
+    }
+
+    System.out.println();
+    System.out.println("Most branched on cells (row, col):");
+    Integer[] cells = new Integer[samplesByCell.length];
+    for(int i = 0; i < cells.length; ++i)
+      cells[i] = i;
+    Arrays.sort(cells, (a, b) -> Long.compare(samplesByCell[b], samplesByCell[a]));
+    for(int i = 0; i < Math.min(10, cells.length) && samplesByCell[cells[i]] > 0; ++i) {
+      System.out.printf("  (%d, %d)  %7.2f%%%n", cells[i] / size, cells[i] % size,
+          100.0 * samplesByCell[cells[i]] / samples);
+    }
+  }
+
+  /* The board on one line, like BatchSolver's input */
+  private String boardString(int[] board) {
+    StringBuilder sb = new StringBuilder(board.length);
+    for(int val : board)
+      sb.append(val == 0 ? "." : Sudoku.symbolOf(val));
+    return sb.toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int top = 10;
+    String filename = null;
+    for(int i = 0; i < args.length; ++i) {
+      if(args[i].equals("-top") && i + 1 < args.length) {
+        top = Integer.parseInt(args[++i]);
+      } else {
+        filename = args[i];
+      }
+    }
+    if(filename == null) {
+      System.err.println("Usage: TraceSummary [-top n] trace");
+      System.exit(1);
+    }
+    try(InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+      new TraceSummary(in, top).print();
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* with() shares most of the old snapshot with the new one, so it is checked against snapshots made
+ * from scratch, and the snapshots it came from are checked to still be the same */
+public class BoardSnapshotTest {
+  @Test
+  public void withIsTheSameAsAFreshLoad() {
+    Random random = new Random(17);
+    for(int[] puzzle : Boards.puzzles()) {
+      BoardSnapshot original = BoardSnapshot.of(puzzle);
+      BoardSnapshot snapshot = original;
+      int[] cells = puzzle.clone();
+      for(int step = 0; step < 40; ++step) {
+        int row = random.nextInt(9);
+        int col = random.nextInt(9);
+        int val = random.nextInt(10); // Conflicts and all
+        BoardSnapshot previous = snapshot;
+        int[] before = cells.clone();
+        snapshot = snapshot.with(row, col, val);
+        cells[row * 9 + col] = val;
+        assertSameBoard(BoardSnapshot.of(cells), snapshot);
+        assertSameBoard(BoardSnapshot.of(before), previous);
+      }
+      assertSameBoard(BoardSnapshot.of(puzzle), original);
+    }
+  }
+
+  @Test
+  public void withTheSameValueIsTheSameSnapshot() {
+    BoardSnapshot snapshot = BoardSnapshot.of(Boards.easy1());
+    assertSame(snapshot, snapshot.with(0, 0, 5));
+  }
+
+  @Test
+  public void sudokuSnapshotsKeepUpWithTheBoard() {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    BoardSnapshot first = sudoku.snapshot();
+    assertSame(first, sudoku.snapshot()); // Nothing changed
+    sudoku.force(0, 2, 4);
+    sudoku.force(4, 4, 5);
+    BoardSnapshot second = sudoku.snapshot();
+    assertSameBoard(BoardSnapshot.of(sudoku.copyTo(new int[81])), second);
+    assertSameBoard(BoardSnapshot.of(Boards.easy1()), first);
+  }
+
+  private static void assertSameBoard(BoardSnapshot expected, BoardSnapshot actual) {
+    int size = expected.getSize();
+    assertArrayEquals(expected.copyTo(new int[size * size]), actual.copyTo(new int[size * size]));
+    for(int row = 0; row < size; ++row) {
+      for(int col = 0; col < size; ++col) {
+        assertEquals(expected.getUsedMask(row, col), actual.getUsedMask(row, col));
+        assertEquals(expected.getLegalValuesMask(row, col), actual.getLegalValuesMask(row, col));
+      }
+    }
+    for(int val = 1; val <= size; ++val)
+      assertEquals(expected.getAllLegalPositions(val, new SquareSet(size)), actual.getAllLegalPositions(val, new SquareSet(size)));
+  }
+}
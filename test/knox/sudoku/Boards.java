@@ -0,0 +1,68 @@
+package knox.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Puzzles the tests share: easy1.txt, a hard 17-clue puzzle, a nearly solved one, and a few made by
+ * PuzzleGenerator. All of them have exactly one solution. */
+final class Boards {
+  private Boards() {}
+
+  static final String HARD =
+      "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..";
+  static final String NEARLY_SOLVED =
+      "534678912672195348198342567859761423426853791713924856961537284287419635345286.7.";
+
+  /* 81 characters, '.' or '0' for blanks, as 81 values */
+  static int[] parse(String puzzle) {
+    int[] cells = new int[puzzle.length()];
+    for(int i = 0; i < cells.length; ++i) {
+      char ch = puzzle.charAt(i);
+      cells[i] = ch == '.' ? 0 : ch - '0';
+    }
+    return cells;
+  }
+
+  static int[] easy1() {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    return sudoku.copyTo(new int[81]);
+  }
+
+  static List<int[]> puzzles() {
+    List<int[]> puzzles = new ArrayList<int[]>();
+    puzzles.add(easy1());
+    puzzles.add(parse(HARD));
+    puzzles.add(parse(NEARLY_SOLVED));
+    PuzzleGenerator generator = new PuzzleGenerator(1);
+    for(int i = 0; i < 10; ++i)
+      puzzles.add(generator.generate(PuzzleGenerator.Difficulty.HARD, new int[81]));
+    return puzzles;
+  }
+
+  /* The values in the row, column and box of a square, worked out from scratch, as a mask */
+  static long usedMask(int[] cells, int row, int col) {
+    int size = (int) Math.round(Math.sqrt(cells.length));
+    int boxSize = (int) Math.round(Math.sqrt(size));
+    int cr = row - row % boxSize;
+    int cc = col - col % boxSize;
+    long used = 0;
+    for(int i = 0; i < size; ++i) {
+      int[] vals = { cells[row * size + i], cells[i * size + col], cells[(cr + i / boxSize) * size + cc + i % boxSize] };
+      for(int val : vals)
+        if(val != 0)
+          used |= Sudoku.maskOf(val);
+    }
+    return used;
+  }
+
+  /* True if solution is a whole, valid board that keeps every value of puzzle */
+  static boolean solves(int[] solution, int[] puzzle) {
+    for(int i = 0; i < puzzle.length; ++i)
+      if(puzzle[i] != 0 && puzzle[i] != solution[i])
+        return false;
+    Sudoku sudoku = new Sudoku((int) Math.round(Math.sqrt(Math.sqrt(solution.length))));
+    sudoku.load(solution);
+    return sudoku.isSolved();
+  }
+}
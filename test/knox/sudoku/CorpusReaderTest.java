@@ -0,0 +1,92 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* Reading a file in the ranges split() gives has to find the same puzzles as reading it in one go */
+public class CorpusReaderTest {
+  private static final int PARTS = 5;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void splitsLineFiles() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for(int[] puzzle : puzzles()) {
+      for(int val : puzzle)
+        text.append(val == 0 ? '.' : (char) ('0' + val));
+      text.append('\n');
+    }
+    text.append("not a puzzle\n");
+    checkSplits(text.toString(), CorpusReader.Format.LINE);
+  }
+
+  @Test
+  public void splitsGridFilesWithSeparators() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for(int[] puzzle : puzzles())
+      text.append(grid(puzzle)).append("EXT:swaps:2\n\n");
+    checkSplits(text.toString(), CorpusReader.Format.GRID);
+  }
+
+  @Test
+  public void splitsGridFilesWithoutSeparators() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for(int[] puzzle : puzzles())
+      text.append(grid(puzzle));
+    checkSplits(text.toString(), CorpusReader.Format.GRID);
+  }
+
+  private static List<int[]> puzzles() {
+    List<int[]> puzzles = new ArrayList<int[]>();
+    PuzzleGenerator generator = new PuzzleGenerator(9);
+    for(int i = 0; i < 200; ++i)
+      puzzles.add(generator.generate(40, new int[81]));
+    return puzzles;
+  }
+
+  private static String grid(int[] puzzle) {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load(puzzle);
+    return sudoku.toSaveString();
+  }
+
+  private void checkSplits(String text, CorpusReader.Format format) throws IOException {
+    Path file = dir.resolve("corpus.txt");
+    Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+    try(CorpusReader reader = new CorpusReader(file.toString())) {
+      assertEquals(format, reader.getFormat());
+      List<String> whole = read(reader.cursor());
+      assertEquals(200, whole.size());
+
+      long[] bounds = reader.split(PARTS);
+      List<String> parts = new ArrayList<String>();
+      for(int i = 0; i < PARTS; ++i) {
+        List<String> part = read(reader.cursor(bounds[i], bounds[i + 1]));
+        assertTrue(part.size() > 0, "range " + i + " of " + Arrays.toString(bounds) + " is empty");
+        parts.addAll(part);
+      }
+      assertEquals(whole, parts);
+    }
+  }
+
+  private static List<String> read(CorpusReader.Cursor cursor) {
+    List<String> puzzles = new ArrayList<String>();
+    int[] cells = new int[81];
+    while(cursor.next(cells))
+      puzzles.add(Arrays.toString(cells));
+    return puzzles;
+  }
+}
@@ -0,0 +1,96 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class MoveJournalTest {
+  @Test
+  public void undoesAndRedoesMovesAndSwaps() {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    MoveJournal journal = new MoveJournal(sudoku);
+    int[] start = sudoku.copyTo(new int[81]);
+    assertTrue(journal.set(0, 2, 4, sudoku.newSquareSet()));
+    assertFalse(journal.set(0, 3, 5, sudoku.newSquareSet())); // Illegal, so not a move
+    journal.swap(0, 0, 0, 1);
+    int[] end = sudoku.copyTo(new int[81]);
+    assertEquals(2, journal.getMoveCount());
+
+    assertTrue(journal.undo()); // Both halves of the swap
+    assertEquals(4, sudoku.get(0, 2));
+    assertEquals(5, sudoku.get(0, 0));
+    assertEquals(3, sudoku.get(0, 1));
+    assertTrue(journal.undo());
+    assertFalse(journal.undo());
+    assertArrayEquals(start, sudoku.copyTo(new int[81]));
+
+    journal.jumpTo(2);
+    assertArrayEquals(end, sudoku.copyTo(new int[81]));
+    assertFalse(journal.redo());
+  }
+
+  @Test
+  public void aNewMoveForgetsWhatWasUndone() {
+    Sudoku sudoku = new Sudoku();
+    MoveJournal journal = new MoveJournal(sudoku);
+    journal.force(0, 0, 1);
+    journal.force(0, 1, 2);
+    journal.undo();
+    journal.force(1, 0, 3);
+    assertFalse(journal.canRedo());
+    assertEquals(2, journal.getMoveCount());
+    assertEquals(0, sudoku.get(0, 1));
+  }
+
+  /* Random moves, undos and redos through a journal small enough to wrap around many times, checked
+   * against every board it went through */
+  @Test
+  public void wrapsAroundWithoutLosingTrackOfMoves() {
+    Random random = new Random(11);
+    Sudoku sudoku = new Sudoku();
+    MoveJournal journal = new MoveJournal(sudoku, 16);
+    List<int[]> boards = new ArrayList<int[]>();
+    boards.add(sudoku.copyTo(new int[81]));
+    int at = 0;
+    for(int step = 0; step < 5000; ++step) {
+      int action = random.nextInt(10);
+      if(action < 2) {
+        if(journal.undo())
+          --at;
+        else
+          assertEquals(0, journal.getPosition());
+      } else if(action < 4) {
+        if(journal.redo())
+          ++at;
+        else
+          assertEquals(boards.size() - 1, at);
+      } else {
+        int[] before = sudoku.copyTo(new int[81]);
+        if(action < 8) {
+          journal.force(random.nextInt(9), random.nextInt(9), random.nextInt(10));
+        } else {
+          journal.swap(random.nextInt(9), random.nextInt(9), random.nextInt(9), random.nextInt(9));
+        }
+        int[] after = sudoku.copyTo(new int[81]);
+        if(!Arrays.equals(before, after)) {
+          boards.subList(at + 1, boards.size()).clear();
+          boards.add(after);
+          ++at;
+        }
+      }
+      assertArrayEquals(boards.get(at), sudoku.copyTo(new int[81]));
+      assertTrue(journal.getMoveCount() <= 16);
+      // The journal remembers the latest moves, up to as many as fit
+      assertEquals(boards.size() - 1 - at, journal.getMoveCount() - journal.getPosition());
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SaveFileTest {
+  @TempDir
+  Path dir;
+
+  private String file(String name) {
+    return dir.resolve(name).toString();
+  }
+
+  @Test
+  public void roundTripsTheBoardGivensAndMetadata() {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    sudoku.force(0, 2, 4); // Not given
+    sudoku.force(8, 0, 3);
+    new SaveFile(sudoku)
+        .set(SaveFile.SWAPS_REMAINING, 1)
+        .set(SaveFile.ELAPSED_MILLIS, 123456789012L)
+        .set(200, 0)
+        .write(file("game.sav"));
+
+    SaveFile save = SaveFile.read(file("game.sav"));
+    Sudoku loaded = new Sudoku();
+    save.applyTo(loaded);
+    assertArrayEquals(sudoku.copyTo(new int[81]), loaded.copyTo(new int[81]));
+    assertEquals(sudoku.getGivens(sudoku.newSquareSet()), loaded.getGivens(loaded.newSquareSet()));
+    assertEquals(1, save.get(SaveFile.SWAPS_REMAINING, 2));
+    assertEquals(123456789012L, save.get(SaveFile.ELAPSED_MILLIS, 0));
+    assertEquals(0, save.get(200, -1));
+    assertEquals(-1, save.get(201, -1));
+  }
+
+  @Test
+  public void roundTripsBigBoards() {
+    Sudoku sudoku = new Sudoku(4);
+    for(int i = 0; i < 16; ++i)
+      sudoku.force(i, (i * 4 + i / 4) % 16, i + 1);
+    new SaveFile(sudoku).write(file("big.sav"));
+    Sudoku loaded = new Sudoku();
+    SaveFile.read(file("big.sav")).applyTo(loaded);
+    assertEquals(16, loaded.getSize());
+    assertArrayEquals(sudoku.copyTo(new int[256]), loaded.copyTo(new int[256]));
+  }
+
+  @Test
+  public void rejectsVersionsItDoesNotKnow() throws IOException {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    new SaveFile(sudoku).write(file("game.sav"));
+    byte[] bytes = Files.readAllBytes(dir.resolve("game.sav"));
+
+    bytes[4] = 2;
+    Files.write(dir.resolve("newer.sav"), bytes);
+    IllegalArgumentException newer = assertThrows(IllegalArgumentException.class, () -> SaveFile.read(file("newer.sav")));
+    assertTrue(newer.getMessage().contains("newer"));
+
+    bytes[4] = 0;
+    Files.write(dir.resolve("corrupt.sav"), bytes);
+    IllegalArgumentException corrupt = assertThrows(IllegalArgumentException.class, () -> SaveFile.read(file("corrupt.sav")));
+    assertTrue(corrupt.getMessage().contains("unknown"));
+  }
+
+  @Test
+  public void rejectsSavesThatAreCutShort() throws IOException {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    new SaveFile(sudoku).set(SaveFile.SWAPS_REMAINING, 2).write(file("game.sav"));
+    byte[] bytes = Files.readAllBytes(dir.resolve("game.sav"));
+    Files.write(dir.resolve("short.sav"), Arrays.copyOf(bytes, bytes.length - 2));
+    assertThrows(IllegalArgumentException.class, () -> SaveFile.read(file("short.sav")));
+  }
+
+  @Test
+  public void readsTextSaves() throws IOException {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    Files.write(dir.resolve("game.txt"), (sudoku.toSaveString() + "EXT:swaps:1\n").getBytes(StandardCharsets.UTF_8));
+    SaveFile save = SaveFile.read(file("game.txt"));
+    Sudoku loaded = new Sudoku();
+    save.applyTo(loaded);
+    assertArrayEquals(sudoku.copyTo(new int[81]), loaded.copyTo(new int[81]));
+    assertEquals(sudoku.getFilledCount(), loaded.getGivens(loaded.newSquareSet()).size());
+    assertEquals(1, save.get(SaveFile.SWAPS_REMAINING, 2));
+  }
+
+  @Test
+  public void holdsAtMost255MetadataEntries() {
+    SaveFile save = new SaveFile(new Sudoku());
+    for(int tag = 0; tag < 255; ++tag)
+      save.set(tag, tag);
+    save.set(7, 70); // Changing one that is already there is fine
+    assertThrows(IllegalArgumentException.class, () -> save.set(255, 1));
+    save.write(file("full.sav"));
+    SaveFile read = SaveFile.read(file("full.sav"));
+    assertEquals(70, read.get(7, -1));
+    assertEquals(254, read.get(254, -1));
+  }
+}
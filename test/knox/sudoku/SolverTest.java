@@ -0,0 +1,112 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* Every solver against the others. They search in different orders, so they only agree if they are
+ * all right. */
+public class SolverTest {
+  private final BitboardSolver bitboard = new BitboardSolver();
+  private final DancingLinksSolver dancingLinks = new DancingLinksSolver();
+  private final ParallelSolver parallel = new ParallelSolver();
+
+  @Test
+  public void everySolverFindsTheSameSolution() {
+    for(int[] puzzle : Boards.puzzles()) {
+      int[] expected = puzzle.clone();
+      assertTrue(bitboard.solve(expected));
+      assertTrue(Boards.solves(expected, puzzle));
+
+      int[] cells = puzzle.clone();
+      assertTrue(dancingLinks.solve(cells));
+      assertArrayEquals(expected, cells);
+
+      cells = puzzle.clone();
+      assertTrue(parallel.solve(cells));
+      assertArrayEquals(expected, cells);
+
+      Sudoku sudoku = new Sudoku();
+      sudoku.load(puzzle);
+      assertTrue(sudoku.solve());
+      assertArrayEquals(expected, sudoku.copyTo(new int[81]));
+    }
+  }
+
+  @Test
+  public void everySolverCountsTheSame() {
+    Random random = new Random(3);
+    for(int[] puzzle : Boards.puzzles()) {
+      // Take out a couple of clues so there is more than one solution to count, but not so many that the
+      // caps below come into it
+      int[] cells = puzzle.clone();
+      for(int taken = 0; taken < 2; ) {
+        int i = random.nextInt(81);
+        if(cells[i] != 0) {
+          cells[i] = 0;
+          ++taken;
+        }
+      }
+      int expected = bitboard.countSolutions(cells, 100000);
+      assertTrue(expected >= 1 && expected < 100000);
+      assertEquals(expected, dancingLinks.countSolutions(cells, 100000));
+      assertEquals(expected, parallel.countSolutions(cells));
+      Sudoku sudoku = new Sudoku();
+      sudoku.load(cells);
+      assertEquals(expected, sudoku.countSolutions(100000));
+      assertEquals(expected, sudoku.countSolutions());
+      assertEquals(Math.min(expected, 2), sudoku.countSolutions(2));
+    }
+  }
+
+  @Test
+  public void countsEveryFourByFourBoard() {
+    int[] empty = new int[16];
+    assertEquals(288, new BitboardSolver(2).countSolutions(empty, Long.MAX_VALUE));
+    assertEquals(288, new DancingLinksSolver(2).countSolutions(empty, 1000));
+    assertEquals(288, new ParallelSolver(2).countSolutions(empty));
+    Sudoku sudoku = new Sudoku(2);
+    assertEquals(288, sudoku.countSolutions());
+    assertEquals(100, sudoku.countSolutions(100));
+  }
+
+  @Test
+  public void brokenBoardsHaveNoSolutions() {
+    int[] puzzle = Boards.easy1();
+    puzzle[2] = 5; // Already a 5 in the first row
+    for(SudokuSolver solver : new SudokuSolver[] { bitboard, dancingLinks }) {
+      int[] cells = puzzle.clone();
+      assertFalse(solver.solve(cells));
+      assertArrayEquals(puzzle, cells);
+      assertEquals(0, solver.countSolutions(cells, 10));
+    }
+    int[] cells = puzzle.clone();
+    assertFalse(parallel.solve(cells));
+    assertArrayEquals(puzzle, cells);
+    assertEquals(0, parallel.countSolutions(cells));
+  }
+
+  @Test
+  public void dancingLinksOnlyCountsDeadEndsAsBacktracks() {
+    // Every branch of an empty 4x4 board leads to solutions, so counting them never backs out of one
+    DancingLinksSolver solver = new DancingLinksSolver(2);
+    assertEquals(288, solver.countSolutions(new int[16], 1000));
+    assertEquals(0, solver.getBacktrackCount());
+  }
+
+  @Test
+  public void generatedPuzzlesHaveOneSolution() {
+    PuzzleGenerator generator = new PuzzleGenerator(5);
+    PuzzleGenerator again = new PuzzleGenerator(5);
+    for(int i = 0; i < 10; ++i) {
+      int[] puzzle = generator.generate(PuzzleGenerator.Difficulty.MEDIUM, new int[81]);
+      assertEquals(1, bitboard.countSolutions(puzzle, 2));
+      assertArrayEquals(puzzle, again.generate(PuzzleGenerator.Difficulty.MEDIUM, new int[81]));
+    }
+  }
+}
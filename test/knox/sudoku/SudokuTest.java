@@ -0,0 +1,202 @@
+package knox.sudoku;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/* The masks, counts, buckets and positions Sudoku keeps up to date with every put(), against the same
+ * things worked out from scratch */
+public class SudokuTest {
+  @Test
+  public void keepsUpWithRandomChanges() {
+    for(int boxSize = 2; boxSize <= 4; ++boxSize) {
+      Random random = new Random(boxSize);
+      Sudoku sudoku = new Sudoku(boxSize);
+      int size = sudoku.getSize();
+      for(int step = 0; step < 3000; ++step) {
+        int action = random.nextInt(100);
+        if(action == 0) {
+          sudoku.clear();
+        } else if(action == 1) {
+          // A whole new board, with a few conflicts in it
+          int[] cells = new int[size * size];
+          for(int i = 0; i < cells.length; ++i)
+            cells[i] = random.nextInt(3) == 0 ? random.nextInt(size + 1) : 0;
+          sudoku.load(cells);
+        } else if(action < 70) {
+          // Mostly values that are legal, like a game, but some that aren't
+          int row = random.nextInt(size);
+          int col = random.nextInt(size);
+          long legal = sudoku.getLegalValuesMask(row, col);
+          int val = legal != 0 && random.nextInt(4) != 0 ? Long.numberOfTrailingZeros(legal) + 1 : random.nextInt(size + 1);
+          sudoku.force(row, col, val);
+        } else {
+          sudoku.force(random.nextInt(size), random.nextInt(size), 0);
+        }
+        if(step % 7 == 0)
+          check(sudoku);
+      }
+      check(sudoku);
+    }
+  }
+
+  private static void check(Sudoku sudoku) {
+    int size = sudoku.getSize();
+    int[] cells = sudoku.copyTo(new int[size * size]);
+    long all = Sudoku.allValuesMask(size);
+
+    int filled = 0;
+    int fewest = Integer.MAX_VALUE;
+    for(int i = 0; i < cells.length; ++i) {
+      int row = i / size;
+      int col = i % size;
+      long used = Boards.usedMask(cells, row, col);
+      assertEquals(used, sudoku.getUsedMask(row, col));
+      assertEquals(~used & all, sudoku.getLegalValuesMask(row, col));
+      if(cells[i] != 0) {
+        ++filled;
+        assertEquals(-1, sudoku.getCandidateCount(row, col));
+      } else {
+        assertEquals(Long.bitCount(~used & all), sudoku.getCandidateCount(row, col));
+        fewest = Math.min(fewest, Long.bitCount(~used & all));
+      }
+    }
+    assertEquals(filled, sudoku.getFilledCount());
+    assertEquals(filled == cells.length, sudoku.isFilled());
+
+    SquareSet mostConstrained = new SquareSet(size);
+    for(int i = 0; i < cells.length; ++i)
+      if(cells[i] == 0 && Long.bitCount(~Boards.usedMask(cells, i / size, i % size) & all) == fewest)
+        mostConstrained.add(i);
+    assertEquals(mostConstrained, sudoku.getMostContrainedSquares(new SquareSet(size)));
+    int square = sudoku.getMostConstrainedSquare();
+    assertEquals(mostConstrained.isEmpty() ? -1 : square, square);
+    assertTrue(square < 0 || mostConstrained.contains(square));
+
+    assertEquals(conflicts(cells, sudoku), sudoku.getConflictCount());
+    assertEquals(conflicts(cells, sudoku) == 0, sudoku.isValid());
+
+    SquareSet legal = new SquareSet(size);
+    SquareSet candidates = new SquareSet(size);
+    for(int val = 1; val <= size; ++val) {
+      legal.clear();
+      candidates.clear();
+      for(int i = 0; i < cells.length; ++i) {
+        if((Boards.usedMask(cells, i / size, i % size) & Sudoku.maskOf(val)) == 0) {
+          legal.add(i);
+          if(cells[i] == 0)
+            candidates.add(i);
+        }
+      }
+      assertEquals(legal, sudoku.getAllLegalPositions(val, new SquareSet(size)));
+      assertEquals(candidates, sudoku.getCandidatePositions(val, new SquareSet(size)));
+      assertEquals(hiddenSingles(candidates, sudoku), sudoku.getHiddenSingles(val, new SquareSet(size)));
+    }
+
+    BoardSnapshot snapshot = sudoku.snapshot();
+    assertArrayEquals(cells, snapshot.copyTo(new int[cells.length]));
+  }
+
+  /* Every extra copy of a value in a row, column or box */
+  private static int conflicts(int[] cells, Sudoku sudoku) {
+    int size = sudoku.getSize();
+    int conflicts = 0;
+    for(int unit = 0; unit < size * 3; ++unit) {
+      int[] counts = new int[size + 1];
+      for(int i = 0; i < size; ++i) {
+        int u = unit % size;
+        int row = unit < size ? u : unit < size * 2 ? i : u / sudoku.getBoxSize() * sudoku.getBoxSize() + i / sudoku.getBoxSize();
+        int col = unit < size ? i : unit < size * 2 ? u : u % sudoku.getBoxSize() * sudoku.getBoxSize() + i % sudoku.getBoxSize();
+        int val = cells[row * size + col];
+        if(val != 0 && ++counts[val] > 1)
+          ++conflicts;
+      }
+    }
+    return conflicts;
+  }
+
+  /* The candidates that are alone in their row, column or box */
+  private static SquareSet hiddenSingles(SquareSet candidates, Sudoku sudoku) {
+    int size = sudoku.getSize();
+    int boxSize = sudoku.getBoxSize();
+    SquareSet singles = new SquareSet(size);
+    for(int unit = 0; unit < size * 3; ++unit) {
+      int found = -1;
+      int count = 0;
+      for(int i = 0; i < size; ++i) {
+        int u = unit % size;
+        int row = unit < size ? u : unit < size * 2 ? i : u / boxSize * boxSize + i / boxSize;
+        int col = unit < size ? i : unit < size * 2 ? u : u % boxSize * boxSize + i % boxSize;
+        if(candidates.contains(row, col)) {
+          found = row * size + col;
+          ++count;
+        }
+      }
+      if(count == 1)
+        singles.add(found);
+    }
+    return singles;
+  }
+
+  @Test
+  public void updateOnlyChangesTheSquaresThatDiffer() {
+    Sudoku sudoku = new Sudoku();
+    sudoku.load("easy1.txt");
+    SquareSet givens = sudoku.getGivens(sudoku.newSquareSet());
+    int[] cells = sudoku.copyTo(new int[81]);
+    cells[2] = 4;
+    cells[0] = 0;
+    SquareSet changed = new SquareSet(9);
+    boolean[] cleared = new boolean[1];
+    sudoku.addChangeListener(new Sudoku.ChangeListener() {
+      @Override
+      public void squareChanged(int row, int col) {
+        changed.add(row, col);
+      }
+
+      @Override
+      public void boardCleared() {
+        cleared[0] = true;
+      }
+    });
+    sudoku.update(cells);
+    assertArrayEquals(cells, sudoku.copyTo(new int[81]));
+    assertEquals(2, changed.size());
+    assertTrue(changed.contains(0) && changed.contains(2));
+    assertFalse(cleared[0]);
+    assertEquals(givens, sudoku.getGivens(sudoku.newSquareSet()));
+    check(sudoku);
+
+    sudoku.update(new int[16]); // Another size has to be loaded
+    assertTrue(cleared[0]);
+    assertEquals(4, sudoku.getSize());
+  }
+
+  @Test
+  public void everySymbolTypesBackToItsValue() {
+    for(int size : new int[] { 4, 9, 16, 25, 36, 49, 64 }) {
+      for(int val = 0; val <= size; ++val) {
+        String symbol = Sudoku.symbolOf(val);
+        assertEquals(1, symbol.length());
+        assertEquals(val, Sudoku.valueOf(symbol.charAt(0), size));
+      }
+    }
+    assertEquals(10, Sudoku.valueOf('a', 16)); // Either case is fine while there is no lower case symbol
+    assertNotEquals(10, Sudoku.valueOf('a', 64));
+    assertEquals(-1, Sudoku.valueOf('%', 64));
+  }
+
+  @Test
+  public void squaresHashLikeTheyEqual() {
+    assertEquals(new SudokuSquare(1, 2, 3), new SudokuSquare(1, 2, 3));
+    assertEquals(new SudokuSquare(1, 2, 3).hashCode(), new SudokuSquare(1, 2, 3).hashCode());
+    // These collided when every board was assumed to be 9x9
+    assertNotEquals(new SudokuSquare(0, 10, 1).hashCode(), new SudokuSquare(1, 1, 1).hashCode());
+  }
+}